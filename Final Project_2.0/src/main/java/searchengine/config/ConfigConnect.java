@@ -12,4 +12,8 @@ import org.springframework.stereotype.Component;
 public class ConfigConnect {
     private String userAgent;
     private String referrer;
+    /**
+     * Имя обходчика, по которому выбирается группа User-agent в robots.txt.
+     */
+    private String robotsAgent = "SearchEngineBot";
 }
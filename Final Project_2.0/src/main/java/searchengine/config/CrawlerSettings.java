@@ -0,0 +1,33 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    private int fetchThreads = 4;
+    private int maxInFlight = 64;
+    private int parseThreads = 2;
+    private int analyzeThreads = 2;
+    private int persistThreads = 2;
+    private int maxConcurrentSites = 4;
+    private int globalMaxInFlight = 128;
+    private int cpuWorkers = 0;
+    private int dbWriters = 4;
+    private long staleAfterHours = 168;
+    private boolean incremental = false;
+    private int queueCapacity = 100;
+    private int maxPagesPerSite = 1_000_000;
+    private double requestsPerSecond = 3.0;
+    private int burst = 1;
+    private long maxDelayMillis = 60000;
+    private int connectTimeoutMillis = 10000;
+    private int timeoutMillis = 60000;
+    private String checkpointDir = "crawl-state";
+    private long checkpointCompactRecords = 200_000;
+}
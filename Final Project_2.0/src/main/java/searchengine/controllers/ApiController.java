@@ -105,13 +105,6 @@ public class ApiController {
 
     @GetMapping("/search")
     public ResponseEntity<SearchResponse> search(String query, String site, Integer offset, Integer limit) {
-        if (indexingInProcess.get()) {
-            SearchResponse responseFail = new SearchResponse();
-            responseFail.setResult(false);
-            responseFail.setError("Идет индексация, сначала нужно ее завершить");
-            return ResponseEntity.ok(responseFail);
-        } else {
-            return ResponseEntity.ok(searchService.search(query, site, offset, limit));
-        }
+        return ResponseEntity.ok(searchService.search(query, site, offset, limit));
     }
 }
@@ -0,0 +1,20 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class IndexingJobStatistics {
+    private long id;
+    private boolean running;
+    private boolean stopRequested;
+    private long startTime;
+    private long fetched;
+    private long queued;
+    private long failed;
+    private long indexed;
+    private long bytes;
+    private double pagesPerSecond;
+    private List<SiteIndexingProgress> sites;
+}
@@ -0,0 +1,11 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class SearchCacheStatistics {
+    private long hits;
+    private long misses;
+    private int size;
+    private double hitRate;
+}
@@ -0,0 +1,17 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class SiteIndexingProgress {
+    private String url;
+    private String name;
+    private String state;
+    private long startTime;
+    private long fetched;
+    private long queued;
+    private long failed;
+    private long indexed;
+    private long bytes;
+    private double pagesPerSecond;
+}
@@ -0,0 +1,26 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Следующий свободный id таблицы. Писатели забирают id блоками, сдвигая next_id одним UPDATE,
+ * поэтому блоки не пересекаются, сколько бы процессов ни писало в базу.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "id_block")
+public class IdBlock {
+
+    @Id
+    @Column(columnDefinition = "VARCHAR(32)")
+    private String name;
+
+    @Column(name = "next_id", nullable = false)
+    private Integer nextId;
+}
@@ -11,17 +11,20 @@ import java.util.List;
 @Getter
 @Setter
 @NoArgsConstructor
-@Table(name = "lemma")
+@Table(name = "lemma", uniqueConstraints = @UniqueConstraint(name = "site_lemma_unique",
+        columnNames = {"site_id", "lemma"}))
 public class Lemma {
 
+    /**
+     * Выдаётся LemmaIndexWriter блоками из id_block, а не базой.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
     @Column(name = "site_id", nullable = false)
     private Integer siteId;
 
-    @Column(columnDefinition = "VARCHAR(255)", nullable = false)
+    @Column(columnDefinition = "VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin", nullable = false)
     private String lemma;
 
     @Column(nullable = false)
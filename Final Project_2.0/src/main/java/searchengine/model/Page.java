@@ -14,8 +14,10 @@ import java.util.List;
 @Table(name = "page", indexes = @Index(name = "path_index", columnList = "path"))
 public class Page {
 
+    /**
+     * Выдаётся PageWriter блоками из id_block, а не базой.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
     @Column(name = "site_id", nullable = false)
@@ -27,8 +29,20 @@ public class Page {
     @Column(nullable = false)
     private Integer code;
 
-    @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
-    private String content;
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String text;
+
+    @Column(columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "CHAR(64)")
+    private String contentHash;
 
     @ManyToOne
     @JoinColumn(name = "site_id", insertable = false, updatable = false, nullable = false)
@@ -44,7 +58,7 @@ public class Page {
                 ", siteId=" + siteId +
                 ", path='" + path + '\'' +
                 ", code=" + code +
-                ", content='" + content + '\'' +
+                ", title='" + title + '\'' +
                 '}';
     }
 }
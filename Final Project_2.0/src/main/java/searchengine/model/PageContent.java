@@ -0,0 +1,28 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * HTML страницы, сжатый Deflate. Хранится отдельно от page, чтобы чтение страниц
+ * для поиска и обхода не поднимало разметку из базы. Сущность задаёт схему таблицы,
+ * а читается разметка через PageContentStore, потоком и только по запросу.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "page_content")
+public class PageContent {
+
+    @Id
+    @Column(name = "page_id")
+    private Integer pageId;
+
+    @Lob
+    @Column(columnDefinition = "MEDIUMBLOB", nullable = false)
+    private byte[] content;
+}
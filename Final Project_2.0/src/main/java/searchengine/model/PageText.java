@@ -0,0 +1,13 @@
+package searchengine.model;
+
+public interface PageText {
+    Integer getId();
+
+    Integer getSiteId();
+
+    String getPath();
+
+    String getTitle();
+
+    String getText();
+}
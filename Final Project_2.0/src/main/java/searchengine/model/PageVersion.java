@@ -0,0 +1,15 @@
+package searchengine.model;
+
+public interface PageVersion {
+    Integer getId();
+
+    String getPath();
+
+    Integer getCode();
+
+    String getEtag();
+
+    String getLastModified();
+
+    String getContentHash();
+}
@@ -26,6 +26,9 @@ public class SearchIndex {
     @Column(name = "rank_index", nullable = false)
     private Float rank;
 
+    @Column(columnDefinition = "BLOB")
+    private byte[] positions;
+
     @ManyToOne
     @JoinColumn(name = "page_id", insertable = false, updatable = false, nullable = false)
     private Page page;
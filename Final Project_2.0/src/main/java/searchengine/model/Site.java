@@ -34,6 +34,12 @@ public class Site {
     @Column(columnDefinition = "VARCHAR(255)", nullable = false)
     private String name;
 
+    @Column(columnDefinition = "INT NOT NULL DEFAULT 0")
+    private Integer generation = 0;
+
+    @Column(columnDefinition = "BIT(1) NOT NULL DEFAULT 1")
+    private Boolean live = true;
+
     @OneToMany(mappedBy = "site", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Page> pages;
 
@@ -49,6 +55,8 @@ public class Site {
                 ", lastError='" + lastError + '\'' +
                 ", url='" + url + '\'' +
                 ", name='" + name + '\'' +
+                ", generation=" + generation +
+                ", live=" + live +
                 '}';
     }
 }
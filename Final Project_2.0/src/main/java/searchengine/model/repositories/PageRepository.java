@@ -1,15 +1,46 @@
 package searchengine.model.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.Page;
+import searchengine.model.PageText;
+import searchengine.model.PageVersion;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface PageRepository extends JpaRepository<Page, Integer> {
 
     @Query("SELECT p FROM Page p WHERE p.path = ?1")
     List<Page> findPagesByUrl(String url);
 
+    @Query("SELECT p FROM Page p WHERE p.siteId = ?1 AND p.path = ?2")
+    List<Page> findPagesBySiteIdAndPath(Integer siteId, String path);
+
+    @Query("SELECT p.id AS id, p.siteId AS siteId, p.path AS path, p.title AS title, p.text AS text " +
+            "FROM Page p WHERE p.id = ?1")
+    Optional<PageText> findPageTextById(Integer id);
+
+    @Query("SELECT p.id AS id, p.path AS path, p.code AS code, p.etag AS etag, " +
+            "p.lastModified AS lastModified, p.contentHash AS contentHash FROM Page p WHERE p.siteId = ?1")
+    List<PageVersion> findPageVersionsBySiteId(Integer siteId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Page p SET p.etag = ?2, p.lastModified = ?3 WHERE p.id = ?1")
+    void updateValidators(Integer id, String etag, String lastModified);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Page p SET p.code = ?2, p.title = ?3, p.text = ?4, p.etag = ?5, " +
+            "p.lastModified = ?6, p.contentHash = ?7 WHERE p.id = ?1")
+    void updateContent(Integer id, Integer code, String title, String text,
+                       String etag, String lastModified, String contentHash);
+
+    @Query("SELECT COUNT(p) FROM Page p WHERE p.site.live = true")
+    long countLivePages();
+
     Integer countBySiteId(Integer siteId);
 }
@@ -4,6 +4,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import searchengine.model.SearchIndex;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface SearchIndexRepository extends JpaRepository<SearchIndex, Integer> {
@@ -11,4 +12,10 @@ public interface SearchIndexRepository extends JpaRepository<SearchIndex, Intege
     @Query("SELECT i FROM SearchIndex i WHERE i.lemmaId = ?1")
     List<SearchIndex> findIndexesByLemmaId(Integer lemmaId);
 
+    @Query("SELECT i.lemmaId FROM SearchIndex i WHERE i.pageId = ?1")
+    List<Integer> findLemmaIdsByPageId(Integer pageId);
+
+    @Query("SELECT i.positions FROM SearchIndex i WHERE i.pageId = ?1 AND i.lemmaId IN ?2")
+    List<byte[]> findPositionsByPageIdAndLemmaIds(Integer pageId, Collection<Integer> lemmaIds);
+
 }
@@ -13,4 +13,10 @@ public interface SiteRepository extends JpaRepository<Site, Integer> {
     @Query("SELECT s FROM Site s WHERE s.url = ?1")
     List<Site> findSitesByUrl(String url);
 
+    @Query("SELECT s FROM Site s WHERE s.url = ?1 AND s.live = true")
+    List<Site> findLiveSitesByUrl(String url);
+
+    @Query("SELECT s FROM Site s WHERE s.live = false")
+    List<Site> findShadowSites();
+
 }
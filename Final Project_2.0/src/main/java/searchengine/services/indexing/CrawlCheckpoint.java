@@ -0,0 +1,171 @@
+package searchengine.services.indexing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Журнал обхода одного сайта в локальном файле. В него дописываются строки
+ * "+ приоритет lastmod адрес" при постановке адреса в очередь и "- адрес" при его обработке.
+ * При открытии и по мере роста журнал сжимается: обработанные адреса остаются строками "= адрес",
+ * необработанные - строками "+". По нему обход продолжается после остановки или перезапуска.
+ */
+public class CrawlCheckpoint implements Closeable {
+    private static final int FLUSH_EVERY = 256;
+
+    private final Path file;
+    private final long compactRecords;
+    private final int maxUrls;
+    private BufferedWriter writer;
+    private int unflushed;
+    private long appended;
+    private boolean broken;
+
+    CrawlCheckpoint(Path file, long compactRecords, int maxUrls) {
+        this.file = file;
+        this.compactRecords = compactRecords;
+        this.maxUrls = maxUrls;
+    }
+
+    /**
+     * Восстанавливает состояние из журнала: все известные адреса попадают в visited,
+     * необработанные передаются в pending. Возвращает число восстановленных адресов.
+     */
+    public synchronized int replay(UrlFingerprintSet visited, Consumer<Entry> pending) throws IOException {
+        int[] restored = new int[1];
+        if (Files.exists(file)) {
+            rewrite(url -> {
+                visited.add(url);
+                restored[0]++;
+            }, pending);
+        }
+        writer = open();
+        return restored[0];
+    }
+
+    public synchronized void scheduled(String url, double priority, long lastModified) {
+        append("+\t" + priority + "\t" + lastModified + "\t" + url);
+    }
+
+    public synchronized void completed(String url) {
+        append("-\t" + url);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            System.out.println("Не удается сохранить журнал обхода - " + file + " - " + ex.getMessage());
+        }
+        writer = null;
+    }
+
+    private void append(String line) {
+        if (broken || writer == null) {
+            return;
+        }
+        try {
+            writer.write(line);
+            writer.newLine();
+            appended++;
+            if (++unflushed >= FLUSH_EVERY) {
+                writer.flush();
+                unflushed = 0;
+            }
+            if (appended >= compactRecords) {
+                writer.close();
+                rewrite(url -> {
+                }, entry -> {
+                });
+                writer = open();
+            }
+        } catch (IOException ex) {
+            broken = true;
+            System.out.println("Не удается записать журнал обхода - " + file + " - " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Сжимает журнал в два прохода: сначала собираются отпечатки обработанных адресов,
+     * затем каждый адрес записывается одной строкой. В памяти остаются только отпечатки.
+     */
+    private void rewrite(Consumer<String> known, Consumer<Entry> pending) throws IOException {
+        UrlFingerprintSet completed = new UrlFingerprintSet(maxUrls);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("-\t") || line.startsWith("=\t")) {
+                    completed.add(line.substring(2));
+                }
+            }
+        }
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        UrlFingerprintSet written = new UrlFingerprintSet(maxUrls);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String url = urlOf(line);
+                if (url == null || !written.add(url)) {
+                    continue;
+                }
+                known.accept(url);
+                if (completed.contains(url)) {
+                    out.write("=\t" + url);
+                } else {
+                    Entry entry = parseEntry(line);
+                    if (entry == null) {
+                        continue;
+                    }
+                    pending.accept(entry);
+                    out.write(line);
+                }
+                out.newLine();
+            }
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        appended = 0;
+    }
+
+    private BufferedWriter open() throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static String urlOf(String line) {
+        if (line.startsWith("=\t") || line.startsWith("-\t")) {
+            return line.substring(2);
+        }
+        if (line.startsWith("+\t")) {
+            int tab = line.lastIndexOf('\t');
+            return tab > 1 ? line.substring(tab + 1) : null;
+        }
+        return null;
+    }
+
+    private static Entry parseEntry(String line) {
+        String[] parts = line.split("\t", 4);
+        if (parts.length < 4 || !parts[0].equals("+")) {
+            return null;
+        }
+        try {
+            return new Entry(parts[3], Double.parseDouble(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    public record Entry(String link, double priority, long lastModified) {
+    }
+}
@@ -0,0 +1,42 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Файлы журналов обхода, по одному на строку site. Журнал удаляется, когда поколение сайта
+ * успешно проиндексировано, поэтому его наличие означает незаконченный обход.
+ */
+@Component
+@RequiredArgsConstructor
+public class CrawlCheckpoints {
+    private final CrawlerSettings settings;
+
+    public CrawlCheckpoint open(Integer siteId) throws IOException {
+        Files.createDirectories(Paths.get(settings.getCheckpointDir()));
+        return new CrawlCheckpoint(path(siteId), settings.getCheckpointCompactRecords(),
+                settings.getMaxPagesPerSite());
+    }
+
+    public boolean exists(Integer siteId) {
+        return Files.exists(path(siteId));
+    }
+
+    public void delete(Integer siteId) {
+        try {
+            Files.deleteIfExists(path(siteId));
+        } catch (IOException ex) {
+            System.out.println("Не удается удалить журнал обхода - " + path(siteId) + " - " + ex.getMessage());
+        }
+    }
+
+    private Path path(Integer siteId) {
+        return Paths.get(settings.getCheckpointDir(), "site-" + siteId + ".log");
+    }
+}
@@ -0,0 +1,720 @@
+package searchengine.services.indexing;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Page;
+import searchengine.model.PageVersion;
+import searchengine.model.Site;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.SiteRepository;
+import searchengine.services.morphology.Lemmatizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Обход одного сайта. Ссылки из robots.txt, sitemap.xml и со страниц копятся в очереди frontier
+ * по приоритету, страницы проходят стадии
+ * загрузки, разбора, лемматизации и записи в базу. Загрузка асинхронная, число запросов
+ * в работе ограничено семафором, между остальными стадиями стоят ограниченные очереди,
+ * поэтому число потоков и страниц в памяти не зависит от размера сайта.
+ * Поставленные в очередь и обработанные адреса пишутся в журнал CrawlCheckpoint,
+ * по которому остановленный или прерванный обход продолжается с того же места.
+ * Запросы, разбор с лемматизацией и запись дополнительно ограничены общим бюджетом IndexingScheduler.
+ */
+public class Crawler {
+    private static final long POLL_MILLIS = 100;
+    private static final double ROOT_PRIORITY = 2.0;
+    private static final double LINK_PRIORITY = 0.5;
+    private static final int PERSIST_BATCH = 50;
+
+    private final String rootLink;
+    private final String host;
+    private final searchengine.config.Site siteConfig;
+    private final Integer siteId;
+    private final AtomicBoolean indexingInProcess;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final LemmaIndexWriter lemmaIndexWriter;
+    private final PageFetcher pageFetcher;
+    private final PolitenessScheduler politenessScheduler;
+    private final RobotsCache robotsCache;
+    private final CrawlerSettings settings;
+    private final Lemmatizer lemmatizer;
+    private final CrawlCheckpoints crawlCheckpoints;
+    private final SiteProgress progress;
+    private final PageContentStore pageContentStore;
+    private final IndexingScheduler.Budget budget;
+    private final PageWriter pageWriter;
+
+    private final BlockingQueue<FrontierEntry> frontier = new PriorityBlockingQueue<>();
+    private final AtomicLong frontierSequence = new AtomicLong();
+    private final UrlFingerprintSet visited;
+    private final UrlFingerprintSet unfinished;
+    private final UrlCanonicalizer canonicalizer;
+    private final Map<String, PageVersion> knownPages = new ConcurrentHashMap<>();
+    private final Semaphore fetchPermits;
+    private final BlockingQueue<FetchedPage> parseQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ParsedPage> analyzeQueue;
+    private final BlockingQueue<AnalyzedPage> persistQueue;
+    private final Set<CompletableFuture<PageFetcher.Response>> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean truncated = new AtomicBoolean();
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile boolean finished;
+    private volatile RobotsRules robotsRules = RobotsRules.EMPTY;
+    private CrawlCheckpoint checkpoint;
+    private boolean resumed;
+
+    public Crawler(searchengine.config.Site siteConfig, Integer siteId, AtomicBoolean indexingInProcess,
+                   SiteRepository siteRepository, PageRepository pageRepository,
+                   LemmaIndexWriter lemmaIndexWriter, PageFetcher pageFetcher,
+                   PolitenessScheduler politenessScheduler, RobotsCache robotsCache,
+                   CrawlerSettings settings, Lemmatizer lemmatizer, CrawlCheckpoints crawlCheckpoints,
+                   SiteProgress progress, PageContentStore pageContentStore,
+                   IndexingScheduler scheduler, PageWriter pageWriter) {
+        this.siteConfig = siteConfig;
+        this.rootLink = siteConfig.getUrl();
+        this.host = URI.create(rootLink).getHost();
+        this.siteId = siteId;
+        this.indexingInProcess = indexingInProcess;
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.lemmaIndexWriter = lemmaIndexWriter;
+        this.pageFetcher = pageFetcher;
+        this.politenessScheduler = politenessScheduler;
+        this.robotsCache = robotsCache;
+        this.settings = settings;
+        this.lemmatizer = lemmatizer;
+        this.crawlCheckpoints = crawlCheckpoints;
+        this.progress = progress;
+        this.pageContentStore = pageContentStore;
+        this.budget = scheduler.getBudget();
+        this.pageWriter = pageWriter;
+        this.fetchPermits = new Semaphore(Math.max(1, settings.getMaxInFlight()));
+        this.visited = new UrlFingerprintSet(settings.getMaxPagesPerSite());
+        this.unfinished = new UrlFingerprintSet(settings.getMaxPagesPerSite());
+        this.canonicalizer = new UrlCanonicalizer(rootLink);
+        this.analyzeQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        this.persistQueue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+    }
+
+    /**
+     * Обходит сайт и возвращается, когда все найденные страницы записаны
+     * или индексация остановлена.
+     */
+    public void crawl() throws InterruptedException, IOException {
+        robotsRules = robotsCache.get(rootLink);
+        if (robotsRules.isUnreachable()) {
+            throw new IOException("robots.txt сайта недоступен, обход запрещён - " + rootLink);
+        }
+        checkpoint = crawlCheckpoints.open(siteId);
+        resumed = checkpoint.replay(visited, entry -> {
+            unfinished.add(entry.link());
+            pending.incrementAndGet();
+            progress.onQueued();
+            frontier.add(new FrontierEntry(entry.link(), entry.priority(), entry.lastModified(),
+                    frontierSequence.incrementAndGet()));
+        }) > 0;
+        politenessScheduler.register(host,
+                siteConfig.getRequestsPerSecond() != null ? siteConfig.getRequestsPerSecond()
+                        : settings.getRequestsPerSecond(),
+                siteConfig.getBurst() != null ? siteConfig.getBurst() : settings.getBurst(),
+                robotsRules.getCrawlDelayMillis());
+        schedule(rootLink, ROOT_PRIORITY, 0);
+        scheduleKnownPages();
+        ExecutorService workers = Executors.newFixedThreadPool(2
+                + settings.getParseThreads() + settings.getAnalyzeThreads() + settings.getPersistThreads());
+        try {
+            pending.incrementAndGet();
+            Future<?> discovery = workers.submit(this::discover);
+            startStage(workers, 1, this::fetchLoop);
+            startStage(workers, settings.getParseThreads(), () -> stageLoop(parseQueue, this::parse,
+                    fetched -> releaseFetchPermit()));
+            startStage(workers, settings.getAnalyzeThreads(), () -> stageLoop(analyzeQueue, this::analyze));
+            startStage(workers, settings.getPersistThreads(), this::persistLoop);
+            while (!completed.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!indexingInProcess.get()) {
+                    discovery.cancel(true);
+                    inFlight.forEach(future -> future.cancel(true));
+                    break;
+                }
+            }
+        } finally {
+            finished = true;
+            workers.shutdown();
+            if (!workers.awaitTermination(settings.getTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+            }
+            while (parseQueue.poll() != null) {
+                releaseFetchPermit();
+            }
+            try {
+                lemmaIndexWriter.flush(siteId);
+            } finally {
+                checkpoint.close();
+            }
+        }
+    }
+
+    /**
+     * Обход продолжил ранее прерванный: часть страниц записана в базу до перезапуска.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    private void startStage(ExecutorService workers, int threads, Runnable loop) {
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            workers.execute(loop);
+        }
+    }
+
+    /**
+     * Отправляет запросы, пока есть свободные разрешения. Разрешение возвращается,
+     * когда стадия разбора забирает ответ, поэтому очередь ответов не растёт больше maxInFlight.
+     */
+    private void fetchLoop() {
+        try {
+            while (!finished) {
+                FrontierEntry entry = frontier.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    continue;
+                }
+                progress.onDequeued();
+                if (!indexingInProcess.get() || !acquireFetchPermit()) {
+                    done();
+                    continue;
+                }
+                PageVersion previous = knownPages.get(entry.link().substring(rootLink.length() - 1));
+                politenessScheduler.schedule(host, () -> send(entry.link(), previous));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Запрос уходит, когда до него дошла очередь хоста. Если к этому времени индексация
+     * остановлена, он не отправляется, а отправленные запросы отменяются в {@link #crawl}.
+     */
+    private void send(String link, PageVersion previous) {
+        if (!indexingInProcess.get()) {
+            releaseFetchPermit();
+            done();
+            return;
+        }
+        long start = System.nanoTime();
+        boolean recheck = previous != null && unfinished.contains(link);
+        boolean conditional = previous != null && previous.getCode() == 200 && !recheck;
+        CompletableFuture<PageFetcher.Response> future = pageFetcher.fetch(link,
+                conditional ? previous.getEtag() : null, conditional ? previous.getLastModified() : null);
+        inFlight.add(future);
+        future.whenComplete((response, ex) -> {
+            inFlight.remove(future);
+            if (ex instanceof CancellationException) {
+                releaseFetchPermit();
+                done();
+                return;
+            }
+            if (finished) {
+                releaseFetchPermit();
+                return;
+            }
+            politenessScheduler.onResponse(host, response == null ? 0 : response.code(),
+                    System.nanoTime() - start, response == null ? 0 : response.retryAfterMillis());
+            progress.onFetched(response == null ? 0 : response.code(),
+                    response == null || response.body() == null ? 0 : response.body().length);
+            parseQueue.add(toFetchedPage(link, previous, recheck, response, ex));
+        });
+    }
+
+    /**
+     * При повторном обходе ставит в очередь все страницы сайта из базы: они будут проверены
+     * условными запросами, даже если на них больше нет ссылок. Страницы, которые журнал
+     * продолженного обхода считает незавершёнными, могли попасть в page без строк indexes,
+     * поэтому они загружаются без условий и всегда переиндексируются.
+     */
+    private void scheduleKnownPages() {
+        String origin = rootLink.substring(0, rootLink.length() - 1);
+        for (PageVersion version : pageRepository.findPageVersionsBySiteId(siteId)) {
+            knownPages.put(version.getPath(), version);
+            schedule(origin + version.getPath(), LINK_PRIORITY, 0);
+        }
+    }
+
+    /**
+     * Берёт разрешение сайта, затем общее. Общие разрешения выдаются по очереди,
+     * поэтому большой сайт не забирает весь бюджет запросов.
+     */
+    private boolean acquireFetchPermit() throws InterruptedException {
+        while (!finished) {
+            if (fetchPermits.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                while (!finished) {
+                    if (budget.tryAcquireFetch(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+                fetchPermits.release();
+            }
+        }
+        return false;
+    }
+
+    private void releaseFetchPermit() {
+        fetchPermits.release();
+        budget.releaseFetch();
+    }
+
+    private <T> void stageLoop(BlockingQueue<T> queue, Stage<T> stage) {
+        stageLoop(queue, stage, item -> {
+        });
+    }
+
+    /**
+     * taken вызывается сразу после извлечения элемента, до проверки остановки и обработки,
+     * поэтому связанное с элементом разрешение возвращается на любом пути.
+     */
+    private <T> void stageLoop(BlockingQueue<T> queue, Stage<T> stage, Consumer<T> taken) {
+        try {
+            while (!finished) {
+                T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    continue;
+                }
+                taken.accept(item);
+                if (!indexingInProcess.get()) {
+                    done();
+                    continue;
+                }
+                try {
+                    stage.process(item);
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                    done();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private FetchedPage toFetchedPage(String link, PageVersion previous, boolean recheck,
+                                      PageFetcher.Response response, Throwable ex) {
+        Page page = new Page();
+        page.setId(previous == null ? null : previous.getId());
+        page.setPath(link.substring(rootLink.length() - 1));
+        page.setSiteId(siteId);
+        if (ex != null) {
+            page.setCode(500);
+            System.out.println("Не удается получить доступ к сайту - " + link + " - " + ex.getMessage());
+            return new FetchedPage(link, page, null, previous, recheck);
+        }
+        page.setCode(response.code());
+        page.setEtag(response.etag());
+        page.setLastModified(response.lastModified());
+        return new FetchedPage(link, page, response.code() == 200 && response.isHtml() ? response : null,
+                previous, recheck);
+    }
+
+    /**
+     * Разбор идёт под общим разрешением на процессор, а передача дальше - уже без него:
+     * поток, ждущий места в очереди, не держит бюджет других сайтов.
+     */
+    private void parse(FetchedPage fetched) throws InterruptedException {
+        ParsedPage parsed;
+        budget.acquireCpu();
+        try {
+            parsed = parsePage(fetched);
+        } finally {
+            budget.releaseCpu();
+        }
+        if (parsed != null) {
+            transfer(analyzeQueue, parsed);
+        }
+    }
+
+    private ParsedPage parsePage(FetchedPage fetched) {
+        Page page = fetched.page();
+        PageVersion previous = fetched.previous();
+        if (previous != null) {
+            knownPages.remove(page.getPath());
+            if (fetched.recheck() && page.getCode() >= 500) {
+                done();
+                return null;
+            }
+            if (page.getCode() == 304 || page.getCode() >= 500) {
+                complete(fetched.link());
+                return null;
+            }
+        }
+        TextAnalyzer textAnalyzer = new TextAnalyzer(lemmatizer);
+        PageFetcher.Response response = fetched.response();
+        if (page.getCode() == 200 && response == null && previous == null) {
+            complete(fetched.link());
+            return null;
+        }
+        if (response != null && isRedirected(fetched.link(), response.uri())) {
+            if (previous != null) {
+                lemmaIndexWriter.remove(siteId, page.getId());
+                pageContentStore.delete(page.getId());
+                pageRepository.deleteById(page.getId());
+            }
+            complete(fetched.link());
+            return null;
+        }
+        Document doc = null;
+        if (response != null) {
+            try {
+                doc = Jsoup.parse(new ByteArrayInputStream(response.body()), response.charset(),
+                        response.uri());
+                getAbsUrls(doc).forEach(link -> schedule(link, LINK_PRIORITY, 0));
+                if (previous == null && isDuplicate(doc, fetched.link())) {
+                    complete(fetched.link());
+                    return null;
+                }
+                textAnalyzer.extractText(page, doc);
+            } catch (IOException ex) {
+                doc = null;
+                page.setCode(500);
+                System.out.println("Не удается разобрать страницу - " + fetched.link() + " - " + ex.getMessage());
+            }
+        }
+        if (previous != null && !fetched.recheck() && page.getCode() == 200 && previous.getCode() == 200
+                && Objects.equals(page.getContentHash(), previous.getContentHash())) {
+            if (!Objects.equals(page.getEtag(), previous.getEtag())
+                    || !Objects.equals(page.getLastModified(), previous.getLastModified())) {
+                pageRepository.updateValidators(page.getId(), page.getEtag(), page.getLastModified());
+            }
+            complete(fetched.link());
+            return null;
+        }
+        byte[] content = doc == null ? null : PageContentStore.compress(doc);
+        return new ParsedPage(page, content, textAnalyzer, previous != null);
+    }
+
+    private void analyze(ParsedPage parsed) throws InterruptedException {
+        Map<String, WordOffsets> positions;
+        budget.acquireCpu();
+        try {
+            positions = parsed.page().getCode() == 200
+                    ? parsed.textAnalyzer().collectLemmas(parsed.page(), indexingInProcess)
+                    : Collections.emptyMap();
+        } finally {
+            budget.releaseCpu();
+        }
+        transfer(persistQueue, new AnalyzedPage(parsed.page(), parsed.content(), parsed.textAnalyzer(), positions,
+                parsed.replace()));
+    }
+
+    /**
+     * Забирает из очереди до PERSIST_BATCH страниц и записывает их вместе.
+     */
+    private void persistLoop() {
+        List<AnalyzedPage> batch = new ArrayList<>(PERSIST_BATCH);
+        try {
+            while (!finished) {
+                AnalyzedPage first = persistQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                persistQueue.drainTo(batch, PERSIST_BATCH - 1);
+                try {
+                    if (indexingInProcess.get()) {
+                        persist(batch);
+                    } else {
+                        batch.forEach(analyzed -> done());
+                    }
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                    batch.forEach(analyzed -> done());
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void persist(List<AnalyzedPage> batch) throws InterruptedException {
+        budget.acquireWrite();
+        try {
+            write(batch);
+        } finally {
+            budget.releaseWrite();
+        }
+    }
+
+    /**
+     * Новая страница добавляется, а изменившаяся заменяет прежнюю версию: сначала из индекса
+     * вычитаются её старые леммы, затем добавляются новые. Новые страницы вставляются одним пакетом,
+     * сжатая разметка пачки тоже пишется пакетом в page_content.
+     * Леммы записанной страницы попадают в буфер LemmaIndexWriter и после остановки, а в журнал
+     * она отмечается обработанной только когда буфер записан в базу: до этого она считается незавершённой.
+     * content_hash такой страницы до записи лемм остаётся пустым, иначе после сбоя следующий
+     * повторный обход счёл бы её неизменной и не восстановил бы индекс.
+     */
+    private void write(List<AnalyzedPage> batch) {
+        List<String> contentHashes = new ArrayList<>(batch.size());
+        for (AnalyzedPage analyzed : batch) {
+            contentHashes.add(analyzed.page().getContentHash());
+            if (!analyzed.positions().isEmpty()) {
+                analyzed.page().setContentHash(null);
+            }
+        }
+        List<Page> inserted = new ArrayList<>();
+        for (AnalyzedPage analyzed : batch) {
+            Page page = analyzed.page();
+            if (analyzed.replace()) {
+                lemmaIndexWriter.remove(siteId, page.getId());
+                pageRepository.updateContent(page.getId(), page.getCode(), page.getTitle(),
+                        page.getText(), page.getEtag(), page.getLastModified(), page.getContentHash());
+            } else {
+                inserted.add(page);
+            }
+        }
+        pageWriter.insert(inserted);
+        List<Object[]> contents = new ArrayList<>();
+        for (AnalyzedPage analyzed : batch) {
+            if (analyzed.content() != null) {
+                contents.add(new Object[]{analyzed.page().getId(), analyzed.content()});
+            } else if (analyzed.replace()) {
+                pageContentStore.delete(analyzed.page().getId());
+            }
+        }
+        pageContentStore.saveAll(contents);
+        updateTimeStatusSite();
+        String origin = rootLink.substring(0, rootLink.length() - 1);
+        for (int i = 0; i < batch.size(); i++) {
+            AnalyzedPage analyzed = batch.get(i);
+            Integer pageId = analyzed.page().getId();
+            String contentHash = contentHashes.get(i);
+            String link = origin + analyzed.page().getPath();
+            if (analyzed.positions().isEmpty()) {
+                checkpoint.completed(link);
+            } else {
+                lemmaIndexWriter.add(siteId, pageId, analyzed.positions(),
+                        analyzed.textAnalyzer().getFormsLemmas(), () -> {
+                            pageWriter.updateContentHash(pageId, contentHash);
+                            checkpoint.completed(link);
+                        });
+            }
+            progress.onIndexed();
+            done();
+        }
+    }
+
+    /**
+     * Читает sitemap из robots.txt, а если их там нет - /sitemap.xml, и добавляет адреса сайта
+     * в frontier. Пока чтение идёт, обход не считается законченным: счётчик pending увеличен заранее.
+     */
+    private void discover() {
+        try {
+            List<String> sitemaps = robotsRules.getSitemaps();
+            if (sitemaps.isEmpty()) {
+                URI root = URI.create(rootLink);
+                sitemaps = List.of(root.getScheme() + "://" + root.getRawAuthority() + "/sitemap.xml");
+            }
+            SitemapParser parser = new SitemapParser(this::openSitemap, indexingInProcess);
+            for (String sitemap : sitemaps) {
+                if (finished) {
+                    break;
+                }
+                parser.read(sitemap, entry -> {
+                    String link = canonicalizer.canonicalize(entry.loc());
+                    if (isCrawlable(link)) {
+                        schedule(link, entry.priority(), entry.lastModified());
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        } finally {
+            done();
+        }
+    }
+
+    /**
+     * sitemap загружается в очередь хоста и под теми же разрешениями, что и страницы.
+     * Разрешение держится, пока поток не закрыт.
+     */
+    private InputStream openSitemap(String url) throws IOException, InterruptedException {
+        String sitemapHost;
+        try {
+            sitemapHost = URI.create(url).getHost();
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+        if (sitemapHost == null || !acquireFetchPermit()) {
+            return null;
+        }
+        InputStream body = null;
+        try {
+            CompletableFuture<Void> turn = new CompletableFuture<>();
+            politenessScheduler.schedule(sitemapHost, () -> turn.complete(null));
+            turn.get();
+            body = pageFetcher.openStream(url);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            if (body == null) {
+                releaseFetchPermit();
+            }
+        }
+        return new FilterInputStream(body) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    releaseFetchPermit();
+                }
+            }
+        };
+    }
+
+    private void schedule(String link, double priority, long lastModified) {
+        if (!robotsRules.isAllowed(link)) {
+            return;
+        }
+        if (visited.add(link)) {
+            checkpoint.scheduled(link, priority, lastModified);
+            pending.incrementAndGet();
+            progress.onQueued();
+            frontier.add(new FrontierEntry(link, priority, lastModified, frontierSequence.incrementAndGet()));
+        } else if (visited.isFull() && truncated.compareAndSet(false, true)) {
+            System.out.println("Достигнут предел max-pages-per-site (" + settings.getMaxPagesPerSite()
+                    + "), новые адреса сайта не обходятся - " + rootLink);
+        }
+    }
+
+    /**
+     * Страница обработана и после перезапуска повторно не загружается.
+     */
+    private void complete(String link) {
+        checkpoint.completed(link);
+        done();
+    }
+
+    /**
+     * Отмечает, что страница прошла все стадии или была отброшена.
+     * Когда незавершённых страниц не осталось, обход закончен.
+     */
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            completed.countDown();
+        }
+    }
+
+    private <T> void transfer(BlockingQueue<T> queue, T item) throws InterruptedException {
+        while (!finished) {
+            if (queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    private Set<String> getAbsUrls(Document document) {
+        Set<String> absUrls = new HashSet<>();
+        Elements elements = document.select("a[href]");
+        elements.stream().map(el -> canonicalizer.canonicalize(el.attr("abs:href")))
+                .filter(this::isCrawlable)
+                .filter(x -> !visited.contains(x))
+                .forEach(absUrls::add);
+        return absUrls;
+    }
+
+    /**
+     * Страница указывает в link rel=canonical другой адрес сайта. Индексируется только он,
+     * а этот адрес считается дублем.
+     */
+    private boolean isDuplicate(Document document, String link) {
+        String canonical = canonicalizer.canonicalize(document.select("link[rel=canonical]").attr("abs:href"));
+        if (!isCrawlable(canonical) || canonical.equals(link)) {
+            return false;
+        }
+        schedule(canonical, LINK_PRIORITY, 0);
+        return true;
+    }
+
+    /**
+     * Адрес переадресовал на другую страницу сайта. Индексируется только она, под её адресом,
+     * а прежняя запись этого адреса, если была, удаляется.
+     */
+    private boolean isRedirected(String link, String uri) {
+        String target = canonicalizer.canonicalize(uri);
+        if (target == null || target.equals(link)) {
+            return false;
+        }
+        if (isCrawlable(target)) {
+            schedule(target, LINK_PRIORITY, 0);
+        }
+        return true;
+    }
+
+    private boolean isCrawlable(String url) {
+        return url != null && url.startsWith(rootLink);
+    }
+
+    private void updateTimeStatusSite() {
+        Site site = siteRepository.findById(siteId).orElse(null);
+        if (site == null) {
+            return;
+        }
+        site.setStatusTime(new Timestamp(System.currentTimeMillis()));
+        siteRepository.save(site);
+    }
+
+    private interface Stage<T> {
+        void process(T item) throws InterruptedException;
+    }
+
+    /**
+     * Адрес в очереди обхода. Сначала идут адреса с большим приоритетом, затем более свежие
+     * по lastmod из sitemap, затем - в порядке обнаружения.
+     */
+    private record FrontierEntry(String link, double priority, long lastModified, long sequence)
+            implements Comparable<FrontierEntry> {
+
+        @Override
+        public int compareTo(FrontierEntry other) {
+            int result = Double.compare(other.priority, priority);
+            if (result == 0) {
+                result = Long.compare(other.lastModified, lastModified);
+            }
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private record FetchedPage(String link, Page page, PageFetcher.Response response, PageVersion previous,
+                               boolean recheck) {
+    }
+
+    private record ParsedPage(Page page, byte[] content, TextAnalyzer textAnalyzer, boolean replace) {
+    }
+
+    private record AnalyzedPage(Page page, byte[] content, TextAnalyzer textAnalyzer,
+                                Map<String, WordOffsets> positions, boolean replace) {
+    }
+}
@@ -0,0 +1,55 @@
+package searchengine.services.indexing;
+
+/**
+ * Token bucket одного хоста в виде расписания: reserve() не ждёт, а возвращает,
+ * через сколько наносекунд можно отправить запрос. Интервал между запросами растёт
+ * при ответах 429/503, ошибках и росте задержки ответа, а затем плавно возвращается к базовому.
+ */
+class HostRateLimiter {
+    private static final double LATENCY_SPIKE = 2.0;
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final long maxIntervalNanos;
+    private long baseIntervalNanos;
+    private long intervalNanos;
+    private int burst;
+    private long theoreticalArrival = System.nanoTime();
+    private double averageLatencyNanos;
+
+    HostRateLimiter(long baseIntervalNanos, int burst, long maxIntervalNanos) {
+        this.maxIntervalNanos = maxIntervalNanos;
+        configure(baseIntervalNanos, burst);
+    }
+
+    synchronized void configure(long baseIntervalNanos, int burst) {
+        this.baseIntervalNanos = Math.max(1, Math.min(baseIntervalNanos, maxIntervalNanos));
+        this.intervalNanos = Math.max(intervalNanos, this.baseIntervalNanos);
+        this.burst = Math.max(1, burst);
+    }
+
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        long arrival = Math.max(theoreticalArrival, now);
+        long startAt = Math.max(now, arrival - (burst - 1) * intervalNanos);
+        theoreticalArrival = arrival + intervalNanos;
+        return startAt - now;
+    }
+
+    synchronized void onResponse(int code, long latencyNanos, long retryAfterMillis) {
+        if (code == 429 || code == 503 || code == 0) {
+            intervalNanos = Math.min(maxIntervalNanos, intervalNanos * 2);
+            if (retryAfterMillis > 0) {
+                long retryAt = System.nanoTime() + Math.min(retryAfterMillis * 1_000_000, maxIntervalNanos);
+                theoreticalArrival = Math.max(theoreticalArrival, retryAt);
+            }
+            return;
+        }
+        if (averageLatencyNanos > 0 && latencyNanos > averageLatencyNanos * LATENCY_SPIKE) {
+            intervalNanos = Math.min(maxIntervalNanos, intervalNanos + intervalNanos / 2);
+        } else {
+            intervalNanos = Math.max(baseIntervalNanos, intervalNanos - baseIntervalNanos / 10);
+        }
+        averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos
+                : averageLatencyNanos * (1 - LATENCY_WEIGHT) + latencyNanos * LATENCY_WEIGHT;
+    }
+}
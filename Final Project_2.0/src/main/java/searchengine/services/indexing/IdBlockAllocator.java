@@ -0,0 +1,63 @@
+package searchengine.services.indexing;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Выдаёт id строк таблицы блоками из id_block (hi-lo). Блок резервируется одним UPDATE
+ * под блокировкой строки, а его начало не меньше MAX(id) + 1, поэтому id не совпадут
+ * ни с уже записанными строками, ни с блоками другого процесса.
+ * Неиспользованный остаток блока после перезапуска пропадает.
+ */
+class IdBlockAllocator {
+    private static final String INSERT_BLOCK = "INSERT IGNORE INTO id_block (name, next_id) VALUES (?, 1)";
+    private static final String RESERVE_BLOCK = "UPDATE id_block SET next_id = LAST_INSERT_ID(" +
+            "GREATEST(next_id, (SELECT COALESCE(MAX(id), 0) + 1 FROM %s)) + ?) WHERE name = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String reserveBlock;
+    private final int blockSize;
+    private boolean created;
+    private int next;
+    private int limit;
+
+    IdBlockAllocator(JdbcTemplate jdbcTemplate, String table, int blockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.reserveBlock = String.format(RESERVE_BLOCK, table);
+        this.blockSize = blockSize;
+    }
+
+    synchronized int next() {
+        if (next >= limit) {
+            reserve();
+        }
+        return next++;
+    }
+
+    private void reserve() {
+        if (!created) {
+            jdbcTemplate.update(INSERT_BLOCK, table);
+            created = true;
+        }
+        Integer end = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement update = connection.prepareStatement(reserveBlock)) {
+                update.setInt(1, blockSize);
+                update.setString(2, table);
+                update.executeUpdate();
+            }
+            try (Statement select = connection.createStatement();
+                 ResultSet rs = select.executeQuery("SELECT LAST_INSERT_ID()")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        });
+        limit = end;
+        next = end - blockSize;
+    }
+}
@@ -1,98 +1,132 @@
 package searchengine.services.indexing;
 
-import searchengine.config.ConfigConnect;
-import searchengine.model.Page;
+import searchengine.config.CrawlerSettings;
 import searchengine.model.Site;
 import searchengine.model.Status;
-import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
-import searchengine.model.repositories.SearchIndexRepository;
 import searchengine.model.repositories.SiteRepository;
+import searchengine.services.morphology.Lemmatizer;
 
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class Indexer extends Thread {
+public class Indexer implements Runnable {
 
+    private final searchengine.config.Site siteConfig;
     private final String pathSite;
     private final String nameSite;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final SearchIndexRepository searchIndexRepository;
-    private final ConfigConnect configConnect;
+    private final LemmaIndexWriter lemmaIndexWriter;
+    private final PageFetcher pageFetcher;
+    private final PolitenessScheduler politenessScheduler;
+    private final RobotsCache robotsCache;
+    private final CrawlerSettings crawlerSettings;
     private final AtomicBoolean indexingInProcess;
+    private final Lemmatizer lemmatizer;
+    private final SiteGenerations siteGenerations;
+    private final CrawlCheckpoints crawlCheckpoints;
+    private final SiteProgress progress;
+    private final PageContentStore pageContentStore;
+    private final IndexingScheduler scheduler;
+    private final PageWriter pageWriter;
+    private Site site;
+    private boolean resumed;
 
     private static final String printStopError = "Индексация остановлена пользователем";
 
-    public Indexer(String pathSite, String nameSite, SiteRepository siteRepository,
-                   PageRepository pageRepository, LemmaRepository lemmaRepository,
-                   SearchIndexRepository searchIndexRepository, ConfigConnect configConnect,
-                   AtomicBoolean indexingInProcess) {
-        this.pathSite = pathSite;
-        this.nameSite = nameSite;
+    public Indexer(searchengine.config.Site siteConfig, SiteRepository siteRepository,
+                   PageRepository pageRepository, LemmaIndexWriter lemmaIndexWriter,
+                   PageFetcher pageFetcher, PolitenessScheduler politenessScheduler,
+                   RobotsCache robotsCache, CrawlerSettings crawlerSettings,
+                   AtomicBoolean indexingInProcess, Lemmatizer lemmatizer, SiteGenerations siteGenerations,
+                   CrawlCheckpoints crawlCheckpoints, SiteProgress progress,
+                   PageContentStore pageContentStore, IndexingScheduler scheduler, PageWriter pageWriter) {
+        this.siteConfig = siteConfig;
+        this.pathSite = siteConfig.getUrl();
+        this.nameSite = siteConfig.getName();
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.searchIndexRepository = searchIndexRepository;
-        this.configConnect = configConnect;
+        this.lemmaIndexWriter = lemmaIndexWriter;
+        this.pageFetcher = pageFetcher;
+        this.politenessScheduler = politenessScheduler;
+        this.robotsCache = robotsCache;
+        this.crawlerSettings = crawlerSettings;
         this.indexingInProcess = indexingInProcess;
+        this.lemmatizer = lemmatizer;
+        this.siteGenerations = siteGenerations;
+        this.crawlCheckpoints = crawlCheckpoints;
+        this.progress = progress;
+        this.pageContentStore = pageContentStore;
+        this.scheduler = scheduler;
+        this.pageWriter = pageWriter;
     }
 
     @Override
     public void run() {
+        if (!indexingInProcess.get()) {
+            progress.moveTo(SiteProgress.State.STOPPED);
+            return;
+        }
         try {
             fillBase();
             if (!indexingInProcess.get()) {
+                progress.moveTo(SiteProgress.State.STOPPED);
                 failedUpdate(printStopError);
             } else {
+                progress.moveTo(SiteProgress.State.COMMITTING);
                 updateIndexedStatusSite();
+                progress.moveTo(SiteProgress.State.INDEXED);
             }
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
             e.printStackTrace();
+            progress.moveTo(SiteProgress.State.FAILED);
             failedUpdate(e.getMessage());
         } catch (InterruptedException ex) {
             ex.printStackTrace();
+            progress.moveTo(SiteProgress.State.STOPPED);
+            failedUpdate(printStopError);
+            Thread.currentThread().interrupt();
         }
     }
 
     public void fillBase() throws InterruptedException, IOException {
-        Site site = new Site();
-        site.setName(nameSite);
-        site.setStatus(Status.INDEXING);
-        site.setLastError(null);
-        site.setStatusTime(new Timestamp(System.currentTimeMillis()));
-        site.setUrl(pathSite);
-        siteRepository.save(site);
+        site = siteGenerations.findResumable(pathSite);
+        if (site == null) {
+            site = crawlerSettings.isIncremental() ? siteGenerations.findLive(pathSite) : null;
+            if (site != null) {
+                crawlCheckpoints.delete(site.getId());
+            }
+        }
+        if (site == null) {
+            site = siteGenerations.createShadow(pathSite, nameSite);
+        } else {
+            site.setName(nameSite);
+            site.setStatus(Status.INDEXING);
+            site.setLastError(null);
+            site.setStatusTime(new Timestamp(System.currentTimeMillis()));
+            siteRepository.save(site);
+        }
 
-        ConcurrentHashMap<String, Page> resultForkJoinPageIndexer = new ConcurrentHashMap<>();
-        new ForkJoinPool().invoke(new FindLinks(pathSite, pathSite, resultForkJoinPageIndexer,
-                indexingInProcess, siteRepository, pageRepository, lemmaRepository,
-                searchIndexRepository, configConnect));
+        progress.moveTo(SiteProgress.State.CRAWLING);
+        Crawler crawler = new Crawler(siteConfig, site.getId(), indexingInProcess, siteRepository, pageRepository,
+                lemmaIndexWriter, pageFetcher, politenessScheduler, robotsCache,
+                crawlerSettings, lemmatizer, crawlCheckpoints, progress, pageContentStore,
+                scheduler, pageWriter);
+        crawler.crawl();
+        resumed = crawler.isResumed();
+        lemmaIndexWriter.forget(site.getId());
     }
 
     private void failedUpdate(String error) {
-        Integer idSite = siteRepository.findSitesByUrl(pathSite).get(0).getId();
-        Site site = new Site();
-        if (idSite != null) {
-            site = siteRepository.findSitesByUrl(pathSite).get(0);
+        if (site != null) {
+            siteGenerations.discard(site, error);
         }
-        site.setLastError(error);
-        site.setName(nameSite);
-        site.setStatus(Status.FAILED);
-        site.setStatusTime(new Timestamp(System.currentTimeMillis()));
-        site.setUrl(pathSite);
-        siteRepository.save(site);
     }
 
     private void updateIndexedStatusSite() {
-        Site site = siteRepository.findSitesByUrl(pathSite).get(0);
-        site.setStatus(Status.INDEXED);
-        site.setLastError(null);
-        site.setStatusTime(new Timestamp(System.currentTimeMillis()));
-        siteRepository.save(site);
+        siteGenerations.commit(site, resumed);
+        crawlCheckpoints.delete(site.getId());
     }
 }
@@ -0,0 +1,71 @@
+package searchengine.services.indexing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Один запуск индексации: набор сайтов со своими состояниями и общий флаг остановки.
+ */
+public class IndexingJob {
+    private final long id;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicBoolean indexingInProcess;
+    private final Map<String, SiteProgress> sites = new LinkedHashMap<>();
+    private volatile boolean stopRequested;
+
+    public IndexingJob(long id, AtomicBoolean indexingInProcess, Collection<searchengine.config.Site> siteConfigs) {
+        this.id = id;
+        this.indexingInProcess = indexingInProcess;
+        for (searchengine.config.Site siteConfig : siteConfigs) {
+            sites.put(siteConfig.getUrl(), new SiteProgress(siteConfig.getUrl(), siteConfig.getName()));
+        }
+    }
+
+    public SiteProgress getProgress(String url) {
+        return sites.get(url);
+    }
+
+    public Collection<SiteProgress> getSites() {
+        return Collections.unmodifiableCollection(sites.values());
+    }
+
+    /**
+     * Сбрасывает флаг индексации. Обходчики замечают его за доли секунды
+     * и отменяют запросы, которые ещё в работе.
+     */
+    public void stop() {
+        stopRequested = true;
+        indexingInProcess.set(false);
+    }
+
+    /**
+     * Завершает запуск: сайты, до которых индексация не дошла или не закончилась, считаются
+     * остановленными, а прерванные на фиксации - неудачными. Иначе запуск навсегда остался бы активным.
+     */
+    public void finish() {
+        for (SiteProgress site : sites.values()) {
+            if (!site.getState().isFinal() && !site.moveTo(SiteProgress.State.STOPPED)) {
+                site.moveTo(SiteProgress.State.FAILED);
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return sites.values().stream().anyMatch(site -> !site.getState().isFinal());
+    }
+
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+}
@@ -0,0 +1,34 @@
+package searchengine.services.indexing;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Текущий запуск индексации. После завершения он остаётся доступным для статистики
+ * до следующего запуска.
+ */
+@Component
+public class IndexingJobs {
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile IndexingJob current;
+
+    public IndexingJob start(AtomicBoolean indexingInProcess, Collection<searchengine.config.Site> sites) {
+        IndexingJob job = new IndexingJob(sequence.incrementAndGet(), indexingInProcess, sites);
+        current = job;
+        return job;
+    }
+
+    public IndexingJob getCurrent() {
+        return current;
+    }
+
+    public void stop() {
+        IndexingJob job = current;
+        if (job != null) {
+            job.stop();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package searchengine.services.indexing;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.model.Site;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.SiteRepository;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Общий для всех сайтов бюджет индексации. Одновременно обходится не больше maxConcurrentSites сайтов,
+ * а запросы в работе, разбор и лемматизация, запись в базу ограничены общими честными семафорами,
+ * поэтому сайты делят их по очереди, сколько бы их ни было в конфигурации.
+ * Семафоры создаются заново на каждый запуск: разрешение, не возвращённое остановленным обходом,
+ * не уменьшает бюджет следующего.
+ * Новые, давно не обновлявшиеся и небольшие сайты запускаются первыми.
+ */
+@Component
+public class IndexingScheduler {
+    private final CrawlerSettings settings;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private volatile Budget budget;
+
+    public IndexingScheduler(CrawlerSettings settings, SiteRepository siteRepository,
+                             PageRepository pageRepository) {
+        this.settings = settings;
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.budget = newBudget();
+    }
+
+    /**
+     * Запускает индексацию сайтов в порядке приоритета и ждёт её окончания.
+     * Потоки пула освобождаются сразу после последнего сайта.
+     */
+    public void runAll(List<SiteTask> tasks) throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        Map<SiteTask, long[]> keys = new HashMap<>();
+        tasks.forEach(task -> keys.put(task, priorityKey(task.site())));
+        List<SiteTask> ordered = new ArrayList<>(tasks);
+        ordered.sort((a, b) -> Arrays.compare(keys.get(a), keys.get(b)));
+        budget = newBudget();
+        ExecutorService sites = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(settings.getMaxConcurrentSites(), ordered.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            ordered.forEach(task -> futures.add(sites.submit(task.task())));
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    ex.getCause().printStackTrace();
+                }
+            }
+        } finally {
+            sites.shutdownNow();
+        }
+    }
+
+    /**
+     * Ключ сортировки: сайт без живого поколения, затем устаревший, затем по числу страниц
+     * и времени последнего обновления.
+     */
+    private long[] priorityKey(searchengine.config.Site siteConfig) {
+        Site live = siteRepository.findLiveSitesByUrl(siteConfig.getUrl()).stream().findFirst().orElse(null);
+        if (live == null) {
+            return new long[]{0, 0, 0, 0};
+        }
+        long statusTime = live.getStatusTime() == null ? 0 : live.getStatusTime().getTime();
+        boolean stale = System.currentTimeMillis() - statusTime
+                > TimeUnit.HOURS.toMillis(settings.getStaleAfterHours());
+        Integer pages = pageRepository.countBySiteId(live.getId());
+        return new long[]{1, stale ? 0 : 1, pages == null ? 0 : pages, statusTime};
+    }
+
+    /**
+     * Бюджет текущего запуска. Обход берёт его один раз при создании и возвращает разрешения туда же.
+     */
+    public Budget getBudget() {
+        return budget;
+    }
+
+    private Budget newBudget() {
+        int cpuWorkers = settings.getCpuWorkers() > 0 ? settings.getCpuWorkers()
+                : Runtime.getRuntime().availableProcessors();
+        return new Budget(new Semaphore(Math.max(1, settings.getGlobalMaxInFlight()), true),
+                new Semaphore(Math.max(1, cpuWorkers), true),
+                new Semaphore(Math.max(1, settings.getDbWriters()), true));
+    }
+
+    public static class Budget {
+        private final Semaphore fetchPermits;
+        private final Semaphore cpuPermits;
+        private final Semaphore writePermits;
+
+        private Budget(Semaphore fetchPermits, Semaphore cpuPermits, Semaphore writePermits) {
+            this.fetchPermits = fetchPermits;
+            this.cpuPermits = cpuPermits;
+            this.writePermits = writePermits;
+        }
+
+        public boolean tryAcquireFetch(long timeout, TimeUnit unit) throws InterruptedException {
+            return fetchPermits.tryAcquire(timeout, unit);
+        }
+
+        public void releaseFetch() {
+            fetchPermits.release();
+        }
+
+        public void acquireCpu() throws InterruptedException {
+            cpuPermits.acquire();
+        }
+
+        public void releaseCpu() {
+            cpuPermits.release();
+        }
+
+        public void acquireWrite() throws InterruptedException {
+            writePermits.acquire();
+        }
+
+        public void releaseWrite() {
+            writePermits.release();
+        }
+    }
+
+    public record SiteTask(searchengine.config.Site site, Runnable task) {
+    }
+}
@@ -1,22 +1,22 @@
 package searchengine.services.indexing;
 
 import lombok.RequiredArgsConstructor;
-import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Service;
 
-import searchengine.config.ConfigConnect;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.SitesList;
 import searchengine.model.*;
-import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
-import searchengine.model.repositories.SearchIndexRepository;
 import searchengine.model.repositories.SiteRepository;
+import searchengine.services.morphology.Lemmatizer;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
@@ -24,38 +24,47 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class IndexingServiceImpl implements IndexingService {
 
     private final SitesList sites;
-    private final ConfigConnect configConnect;
+    private final CrawlerSettings crawlerSettings;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final SearchIndexRepository searchIndexRepository;
+    private final LemmaIndexWriter lemmaIndexWriter;
+    private final PageFetcher pageFetcher;
+    private final PolitenessScheduler politenessScheduler;
+    private final RobotsCache robotsCache;
+    private final Lemmatizer lemmatizer;
+    private final SiteGenerations siteGenerations;
+    private final CrawlCheckpoints crawlCheckpoints;
+    private final IndexingJobs indexingJobs;
+    private final PageContentStore pageContentStore;
+    private final IndexingScheduler indexingScheduler;
+    private final PageWriter pageWriter;
     private AtomicBoolean indexingInProcess;
 
 
     @Override
     public void getIndexing(AtomicBoolean indexingInProcess) {
         this.indexingInProcess = indexingInProcess;
+        IndexingJob job = null;
         try {
-            List<Thread> indexingThreadList = new ArrayList<>();
+            List<IndexingScheduler.SiteTask> tasks = new ArrayList<>();
             List<searchengine.config.Site> sitesList = sites.getSites();
+            job = indexingJobs.start(indexingInProcess, sitesList);
+            siteGenerations.collectAbandoned();
             for (searchengine.config.Site siteConfig : sitesList) {
-                String pathSite = siteConfig.getUrl();
-                String nameSite = siteConfig.getName();
-
-                if (checkToExistenceSite(pathSite)) {
-                    deleteDataFromDB(pathSite);
-                }
-                Thread thread = new Indexer(pathSite, nameSite, siteRepository,
-                        pageRepository, lemmaRepository, searchIndexRepository,
-                        configConnect, indexingInProcess);
-                indexingThreadList.add(thread);
-                thread.start();
-            }
-            for (Thread thread : indexingThreadList) {
-                thread.join();
+                Indexer indexer = new Indexer(siteConfig, siteRepository, pageRepository, lemmaIndexWriter,
+                        pageFetcher, politenessScheduler, robotsCache, crawlerSettings,
+                        indexingInProcess, lemmatizer, siteGenerations, crawlCheckpoints,
+                        job.getProgress(siteConfig.getUrl()), pageContentStore, indexingScheduler,
+                        pageWriter);
+                tasks.add(new IndexingScheduler.SiteTask(siteConfig, indexer));
             }
+            indexingScheduler.runAll(tasks);
         } catch (Exception ex) {
             ex.printStackTrace();
+        } finally {
+            if (job != null) {
+                job.finish();
+            }
         }
         indexingInProcess.set(false);
     }
@@ -63,68 +72,66 @@ public class IndexingServiceImpl implements IndexingService {
     @Override
     public void stopIndexing(AtomicBoolean indexingInProcess) {
         this.indexingInProcess = indexingInProcess;
+        indexingJobs.stop();
     }
 
     @Override
     public void indexPage(String url, String rootUrl, String rootName, AtomicBoolean indexingInProcess) {
         this.indexingInProcess = indexingInProcess;
         setIndexingStatusSite(rootUrl, rootName);
-        int count = pageRepository.findPagesByUrl(url.substring(rootUrl.length() - 1)).size();
-        if (count != 0) {
-            Integer idPage = getPageId(url.substring(rootUrl.length() - 1));
-            Page pageForDelete = pageRepository.findById(idPage).orElse(new Page());
-            pageRepository.delete(pageForDelete);
+        String canonical = new UrlCanonicalizer(rootUrl).canonicalize(url);
+        if (canonical != null && canonical.startsWith(rootUrl)) {
+            url = canonical;
         }
         Integer idSite = getSiteId(rootUrl);
+        for (Page pageForDelete : pageRepository.findPagesBySiteIdAndPath(idSite, url.substring(rootUrl.length() - 1))) {
+            lemmaIndexWriter.remove(idSite, pageForDelete.getId());
+            pageContentStore.delete(pageForDelete.getId());
+            pageRepository.delete(pageForDelete);
+        }
         Page page = new Page();
         page.setSiteId(idSite);
         page.setPath(url.substring(rootUrl.length() - 1));
+        page.setCode(500);
+        Document doc = null;
         try {
-            Connection connection = Jsoup.connect(url)
-                    .userAgent(configConnect.getUserAgent())
-                    .referrer(configConnect.getReferrer());
-            Document doc = connection.timeout(60000).get();
-            page.setContent(doc.outerHtml());
-            page.setCode(doc.connection().response().statusCode());
-        } catch (IOException ex) {
+            PageFetcher.Response response = pageFetcher.fetch(url).get();
+            page.setCode(response.code());
+            page.setEtag(response.etag());
+            page.setLastModified(response.lastModified());
+            if (response.code() == 200 && response.isHtml()) {
+                doc = Jsoup.parse(new ByteArrayInputStream(response.body()), response.charset(), response.uri());
+            }
+        } catch (IOException | ExecutionException ex) {
             ex.printStackTrace();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        TextAnalyzer textAnalyzer = new TextAnalyzer(lemmatizer);
+        if (page.getCode() == 200 && doc != null) {
+            textAnalyzer.extractText(page, doc);
+        }
+        pageWriter.insert(List.of(page));
+        if (doc != null) {
+            pageContentStore.save(page.getId(), PageContentStore.compress(doc));
         }
-        pageRepository.save(page);
         if (page.getCode() == 200) {
-            makeAnalyzeText(page, indexingInProcess);
+            makeAnalyzeText(textAnalyzer, page, indexingInProcess);
             setIndexedStatusSite(idSite);
         }
         indexingInProcess.set(false);
     }
 
-    private void makeAnalyzeText(Page page, AtomicBoolean indexingInProcess) {
-        TextAnalyzer textAnalyzer = new TextAnalyzer();
-        textAnalyzer.analyze(page, lemmaRepository, searchIndexRepository, indexingInProcess);
-    }
-
-    private Boolean checkToExistenceSite(String path) {
-        List<Site> sites = siteRepository.findAll();
-        for (Site site : sites) {
-            if (site.getUrl().equals(path)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private void deleteDataFromDB(String pathSite) {
-        Integer idSite = getSiteId(pathSite);
-        siteRepository.deleteById(idSite);
+    private void makeAnalyzeText(TextAnalyzer textAnalyzer, Page page, AtomicBoolean indexingInProcess) {
+        textAnalyzer.analyze(page, lemmaIndexWriter, indexingInProcess);
+        lemmaIndexWriter.flush(page.getSiteId());
     }
 
     private void setIndexingStatusSite(String url, String name) {
-        Boolean existsSite = checkToExistenceSite(url);
-        Site site = new Site();
-        if (!existsSite) {
-            site.setName(name);
-            site.setUrl(url);
-        } else {
-            site = siteRepository.findSitesByUrl(url).get(0);
+        Site site = siteGenerations.findLive(url);
+        if (site == null) {
+            siteGenerations.createShadow(url, name);
+            return;
         }
         site.setStatus(Status.INDEXING);
         site.setLastError(null);
@@ -141,10 +148,6 @@ public class IndexingServiceImpl implements IndexingService {
     }
 
     private Integer getSiteId(String path) {
-        return siteRepository.findSitesByUrl(path).get(0).getId();
-    }
-
-    private Integer getPageId(String path) {
-        return pageRepository.findPagesByUrl(path).get(0).getId();
+        return siteGenerations.findLive(path).getId();
     }
 }
\ No newline at end of file
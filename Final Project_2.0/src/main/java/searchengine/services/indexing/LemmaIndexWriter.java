@@ -0,0 +1,250 @@
+package searchengine.services.indexing;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.services.search.InvertedIndex;
+import searchengine.services.search.TokenPositions;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Запись лемм и строк indexes пачками. id новых лемм выделяются блоками через IdBlockAllocator,
+ * поэтому они не совпадают с id другого процесса. Один сайт в один момент индексирует только
+ * один процесс: если лемму сайта уже записал другой, её id перечитывается после вставки пачки
+ * и строки indexes пишутся с ним, но частоты при одновременной записи не согласуются.
+ */
+@Component
+public class LemmaIndexWriter {
+
+    private static final int BATCH_PAGES = 100;
+    private static final int BATCH_INDEXES = 20_000;
+    private static final int LEMMA_ID_BLOCK = 1000;
+    private static final int SELECT_CHUNK = 1000;
+
+    private static final String SELECT_SITE_LEMMAS =
+            "SELECT id, lemma, forms_lemmas FROM lemma WHERE site_id = ?";
+    private static final String UPSERT_LEMMA =
+            "INSERT INTO lemma (id, site_id, lemma, frequency, forms_lemmas) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency), " +
+            "forms_lemmas = IF(VALUES(forms_lemmas) = '', forms_lemmas, " +
+            "CONCAT(forms_lemmas, ',', VALUES(forms_lemmas)))";
+    private static final String INSERT_INDEX =
+            "INSERT INTO indexes (page_id, lemma_id, rank_index, positions) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_PAGE_LEMMA_IDS = "SELECT lemma_id FROM indexes WHERE page_id = ?";
+    private static final String DECREMENT_LEMMA =
+            "UPDATE lemma SET frequency = GREATEST(frequency - 1, 0) WHERE id = ?";
+    private static final String DELETE_PAGE_INDEXES = "DELETE FROM indexes WHERE page_id = ?";
+    private static final String SELECT_LEMMA_IDS = "SELECT id, lemma FROM lemma WHERE site_id = ? AND lemma IN (%s)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InvertedIndex invertedIndex;
+    private final Map<Integer, SiteBuffer> buffers = new ConcurrentHashMap<>();
+    private final IdBlockAllocator lemmaIdBlocks;
+
+    public LemmaIndexWriter(@Qualifier("writerJdbcTemplate") JdbcTemplate jdbcTemplate,
+                            InvertedIndex invertedIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.invertedIndex = invertedIndex;
+        this.lemmaIdBlocks = new IdBlockAllocator(jdbcTemplate, "lemma", LEMMA_ID_BLOCK);
+    }
+
+    /**
+     * Накапливает леммы страницы в буфере сайта. Метод вызывается параллельно из всех
+     * потоков обхода: id новых лемм берутся из зарезервированного блока,
+     * а частоты увеличиваются атомарно при записи пачки.
+     */
+    public void add(Integer siteId, Integer pageId, Map<String, WordOffsets> positions,
+                    Map<String, ? extends Set<String>> forms) {
+        add(siteId, pageId, positions, forms, null);
+    }
+
+    /**
+     * То же, но written вызывается после того, как пачка с леммами страницы записана в базу.
+     * Если буфер сайта сброшен через {@link #forget}, written не вызывается.
+     */
+    public void add(Integer siteId, Integer pageId, Map<String, WordOffsets> positions,
+                    Map<String, ? extends Set<String>> forms, Runnable written) {
+        SiteBuffer buffer = buffers.computeIfAbsent(siteId, this::loadBuffer);
+        Batch batch;
+        buffer.lock.readLock().lock();
+        try {
+            batch = buffer.pending;
+            positions.forEach((lemma, offsets) -> {
+                int lemmaId = buffer.lemmaIds.computeIfAbsent(lemma, k -> {
+                    batch.created.add(k);
+                    return lemmaIdBlocks.next();
+                });
+                batch.frequencies.merge(lemma, 1, Integer::sum);
+                batch.indexes.add(new PendingIndex(pageId, lemmaId, (float) offsets.size(),
+                        TokenPositions.encode(offsets.array(), offsets.size())));
+                Set<String> known = buffer.knownForms.computeIfAbsent(lemma, k -> ConcurrentHashMap.newKeySet());
+                Set<String> lemmaForms = forms.get(lemma);
+                if (lemmaForms == null) {
+                    return;
+                }
+                for (String form : lemmaForms) {
+                    if (known.add(form)) {
+                        batch.forms.computeIfAbsent(lemma, k -> ConcurrentHashMap.newKeySet()).add(form);
+                    }
+                }
+            });
+            batch.indexCount.addAndGet(positions.size());
+            batch.pages.incrementAndGet();
+            if (written != null) {
+                batch.written.add(written);
+            }
+        } finally {
+            buffer.lock.readLock().unlock();
+        }
+        if (batch.pages.get() >= BATCH_PAGES || batch.indexCount.get() >= BATCH_INDEXES) {
+            Batch ready = swap(buffer, batch);
+            if (ready != null) {
+                write(siteId, buffer, ready);
+            }
+        }
+    }
+
+    public void flush(Integer siteId) {
+        SiteBuffer buffer = buffers.get(siteId);
+        if (buffer == null) {
+            return;
+        }
+        Batch ready = swap(buffer, null);
+        if (ready != null && ready.pages.get() > 0) {
+            write(siteId, buffer, ready);
+        }
+    }
+
+    /**
+     * Убирает из индекса прежнюю версию страницы: уменьшает частоты её лемм и удаляет её строки indexes.
+     * Леммы с нулевой частотой остаются, чтобы их id не менялись.
+     */
+    public void remove(Integer siteId, Integer pageId) {
+        List<Integer> lemmaIds = jdbcTemplate.queryForList(SELECT_PAGE_LEMMA_IDS, Integer.class, pageId);
+        if (lemmaIds.isEmpty()) {
+            return;
+        }
+        invertedIndex.removePage(siteId, pageId, lemmaIds);
+        jdbcTemplate.batchUpdate(DECREMENT_LEMMA, lemmaIds, BATCH_INDEXES, (ps, lemmaId) -> ps.setInt(1, lemmaId));
+        jdbcTemplate.update(DELETE_PAGE_INDEXES, pageId);
+    }
+
+    public void forget(Integer siteId) {
+        buffers.remove(siteId);
+    }
+
+    private Batch swap(SiteBuffer buffer, Batch expected) {
+        buffer.lock.writeLock().lock();
+        try {
+            Batch current = buffer.pending;
+            if (expected != null && current != expected) {
+                return null;
+            }
+            buffer.pending = new Batch();
+            return current;
+        } finally {
+            buffer.lock.writeLock().unlock();
+        }
+    }
+
+    private SiteBuffer loadBuffer(Integer siteId) {
+        SiteBuffer buffer = new SiteBuffer();
+        jdbcTemplate.query(SELECT_SITE_LEMMAS, rs -> {
+            String lemma = rs.getString("lemma");
+            Set<String> known = ConcurrentHashMap.newKeySet();
+            known.addAll(Arrays.asList(rs.getString("forms_lemmas").split(",")));
+            buffer.lemmaIds.put(lemma, rs.getInt("id"));
+            buffer.knownForms.put(lemma, known);
+        }, siteId);
+        return buffer;
+    }
+
+    private void write(Integer siteId, SiteBuffer buffer, Batch batch) {
+        List<Object[]> lemmaRows = new ArrayList<>();
+        new TreeMap<>(batch.frequencies).forEach((lemma, count) -> lemmaRows.add(new Object[]{
+                buffer.lemmaIds.get(lemma), siteId, lemma, count,
+                String.join(",", batch.forms.getOrDefault(lemma, Collections.emptySet()))}));
+        jdbcTemplate.batchUpdate(UPSERT_LEMMA, lemmaRows);
+        rereadCreated(siteId, buffer, batch);
+
+        List<Object[]> indexRows = new ArrayList<>();
+        Map<Integer, List<PendingIndex>> lemmaPostings = new HashMap<>();
+        for (PendingIndex index : batch.indexes) {
+            Integer lemmaId = buffer.movedIds.getOrDefault(index.lemmaId(), index.lemmaId());
+            indexRows.add(new Object[]{index.pageId(), lemmaId, index.rank(), index.positions()});
+            lemmaPostings.computeIfAbsent(lemmaId, k -> new ArrayList<>()).add(index);
+        }
+        jdbcTemplate.batchUpdate(INSERT_INDEX, indexRows);
+        publish(siteId, buffer, batch, lemmaPostings);
+        batch.written.forEach(Runnable::run);
+    }
+
+    /**
+     * Перечитывает id лемм, впервые встреченных в пачке. Если лемму сайта раньше записал другой процесс,
+     * вставка обновила его строку, и строки indexes должны ссылаться на её id, а не на выделенный здесь.
+     */
+    private void rereadCreated(Integer siteId, SiteBuffer buffer, Batch batch) {
+        List<String> created = new ArrayList<>(batch.created);
+        for (int from = 0; from < created.size(); from += SELECT_CHUNK) {
+            List<String> chunk = created.subList(from, Math.min(from + SELECT_CHUNK, created.size()));
+            List<Object> args = new ArrayList<>(chunk.size() + 1);
+            args.add(siteId);
+            args.addAll(chunk);
+            String sql = String.format(SELECT_LEMMA_IDS, String.join(",", Collections.nCopies(chunk.size(), "?")));
+            jdbcTemplate.query(sql, rs -> {
+                String lemma = rs.getString("lemma");
+                int storedId = rs.getInt("id");
+                Integer allocatedId = buffer.lemmaIds.put(lemma, storedId);
+                if (allocatedId != null && allocatedId != storedId) {
+                    buffer.movedIds.put(allocatedId, storedId);
+                }
+            }, args.toArray());
+        }
+    }
+
+    private void publish(Integer siteId, SiteBuffer buffer, Batch batch,
+                         Map<Integer, List<PendingIndex>> lemmaPostings) {
+        for (String lemma : batch.frequencies.keySet()) {
+            Integer lemmaId = buffer.lemmaIds.get(lemma);
+            List<PendingIndex> indexes = lemmaPostings.get(lemmaId);
+            if (indexes == null) {
+                continue;
+            }
+            indexes.sort(Comparator.comparing(PendingIndex::pageId));
+            int[] pageIds = new int[indexes.size()];
+            float[] ranks = new float[indexes.size()];
+            for (int i = 0; i < pageIds.length; i++) {
+                pageIds[i] = indexes.get(i).pageId();
+                ranks[i] = indexes.get(i).rank();
+            }
+            invertedIndex.add(siteId, lemma, lemmaId, pageIds, ranks);
+        }
+    }
+
+    private static class SiteBuffer {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Integer> lemmaIds = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> knownForms = new ConcurrentHashMap<>();
+        private final Map<Integer, Integer> movedIds = new ConcurrentHashMap<>();
+        private volatile Batch pending = new Batch();
+    }
+
+    private static class Batch {
+        private final Map<String, Integer> frequencies = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> forms = new ConcurrentHashMap<>();
+        private final Queue<PendingIndex> indexes = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger indexCount = new AtomicInteger();
+        private final AtomicInteger pages = new AtomicInteger();
+        private final Queue<Runnable> written = new ConcurrentLinkedQueue<>();
+        private final Set<String> created = ConcurrentHashMap.newKeySet();
+    }
+
+    private record PendingIndex(Integer pageId, Integer lemmaId, Float rank, byte[] positions) {
+    }
+}
@@ -0,0 +1,182 @@
+package searchengine.services.indexing;
+
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Сжатое хранение HTML страниц в таблице page_content. Разметка сжимается прямо из документа Jsoup,
+ * без промежуточной строки, и читается только по запросу, потоком с распаковкой.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class PageContentStore {
+
+    private static final String COUNT_LEGACY_COLUMN = "SELECT COUNT(*) FROM information_schema.columns " +
+            "WHERE table_schema = DATABASE() AND table_name = 'page' AND column_name = 'content'";
+    private static final String COUNT_NOT_NULL_LEGACY_COLUMN = COUNT_LEGACY_COLUMN + " AND is_nullable = 'NO'";
+    private static final String ALLOW_NULL_LEGACY_COLUMN = "ALTER TABLE page MODIFY content MEDIUMTEXT NULL";
+    private static final String SELECT_LEGACY_CHUNK = "SELECT id, content FROM page " +
+            "WHERE id > ? AND content IS NOT NULL ORDER BY id LIMIT ?";
+    private static final String INSERT_LEGACY_CONTENT = "INSERT IGNORE INTO page_content (page_id, content) VALUES (?, ?)";
+    private static final String CLEAR_LEGACY_CONTENT = "UPDATE page SET content = NULL WHERE id IN (%s)";
+    private static final String DROP_LEGACY_COLUMN = "ALTER TABLE page DROP COLUMN content";
+    private static final String UPSERT_CONTENT = "INSERT INTO page_content (page_id, content) VALUES (?, ?) " +
+            "ON DUPLICATE KEY UPDATE content = VALUES(content)";
+    private static final String DELETE_CONTENT = "DELETE FROM page_content WHERE page_id = ?";
+    private static final String SELECT_CONTENT = "SELECT content FROM page_content WHERE page_id = ?";
+    private static final String SELECT_LEGACY_CONTENT = "SELECT content FROM page WHERE id = ?";
+    private static final int BACKFILL_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate writerJdbcTemplate;
+    private final ExecutorService backfill = Executors.newSingleThreadExecutor();
+    private volatile boolean legacyColumn;
+
+    public PageContentStore(JdbcTemplate jdbcTemplate,
+                            @Qualifier("writerJdbcTemplate") JdbcTemplate writerJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.writerJdbcTemplate = writerJdbcTemplate;
+    }
+
+    /**
+     * Старая колонка page.content больше не заполняется. Пока она есть, она перестаёт быть
+     * обязательной, иначе новые строки page не вставятся, а в фоне её разметка сжимается
+     * и переносится в page_content. Когда перенос закончен, колонка удаляется,
+     * и следующие запуски ничего не делают.
+     */
+    @PostConstruct
+    public void migrate() {
+        Integer columns = jdbcTemplate.queryForObject(COUNT_LEGACY_COLUMN, Integer.class);
+        if (columns == null || columns == 0) {
+            return;
+        }
+        Integer notNull = jdbcTemplate.queryForObject(COUNT_NOT_NULL_LEGACY_COLUMN, Integer.class);
+        if (notNull != null && notNull > 0) {
+            writerJdbcTemplate.execute(ALLOW_NULL_LEGACY_COLUMN);
+        }
+        legacyColumn = true;
+        backfill.execute(this::moveLegacyContent);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfill.shutdownNow();
+    }
+
+    public static byte[] compress(Document document) {
+        return deflate(document::html);
+    }
+
+    private static byte[] deflate(HtmlSource source) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new DeflaterOutputStream(bytes, deflater), StandardCharsets.UTF_8))) {
+            source.writeTo(writer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public void save(Integer pageId, byte[] content) {
+        writerJdbcTemplate.update(UPSERT_CONTENT, pageId, content);
+    }
+
+    /**
+     * Записывает разметку пачки страниц одним batch-запросом. Строки - пары (page_id, content).
+     */
+    public void saveAll(List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            writerJdbcTemplate.batchUpdate(UPSERT_CONTENT, rows);
+        }
+    }
+
+    public void delete(Integer pageId) {
+        writerJdbcTemplate.update(DELETE_CONTENT, pageId);
+    }
+
+    /**
+     * Открывает HTML страницы потоком байтов UTF-8 или возвращает null, если разметки нет.
+     * Пока перенос не закончен, страницы без строки page_content читаются из старой колонки;
+     * если её успели удалить между проверкой и запросом, разметка уже в page_content.
+     */
+    public InputStream openStream(Integer pageId) {
+        List<byte[]> compressed = jdbcTemplate.query(SELECT_CONTENT, (rs, i) -> rs.getBytes("content"), pageId);
+        if (!compressed.isEmpty()) {
+            return new InflaterInputStream(new ByteArrayInputStream(compressed.get(0)));
+        }
+        if (!legacyColumn) {
+            return null;
+        }
+        List<String> legacy;
+        try {
+            legacy = jdbcTemplate.queryForList(SELECT_LEGACY_CONTENT, String.class, pageId);
+        } catch (DataAccessException ex) {
+            return legacyColumn ? null : openStream(pageId);
+        }
+        if (legacy.isEmpty() || legacy.get(0) == null) {
+            return null;
+        }
+        return new ByteArrayInputStream(legacy.get(0).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String load(Integer pageId) throws IOException {
+        try (InputStream stream = openStream(pageId)) {
+            return stream == null ? null : new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Переносит разметку из page.content пачками по id. Уже записанная в page_content разметка
+     * новее старой и не перезаписывается. Прерванный перенос продолжается при следующем запуске.
+     */
+    private void moveLegacyContent() {
+        try {
+            int lastId = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Object[]> rows = new ArrayList<>();
+                jdbcTemplate.query(SELECT_LEGACY_CHUNK, rs -> {
+                    String html = rs.getString("content");
+                    rows.add(new Object[]{rs.getInt("id"), deflate(writer -> writer.write(html))});
+                }, lastId, BACKFILL_CHUNK);
+                if (rows.isEmpty()) {
+                    legacyColumn = false;
+                    writerJdbcTemplate.execute(DROP_LEGACY_COLUMN);
+                    return;
+                }
+                writerJdbcTemplate.batchUpdate(INSERT_LEGACY_CONTENT, rows);
+                List<Object> ids = new ArrayList<>(rows.size());
+                rows.forEach(row -> ids.add(row[0]));
+                writerJdbcTemplate.update(String.format(CLEAR_LEGACY_CONTENT,
+                        String.join(",", Collections.nCopies(ids.size(), "?"))), ids.toArray());
+                lastId = (Integer) rows.get(rows.size() - 1)[0];
+            }
+        } catch (RuntimeException ex) {
+            System.out.println("Не удается перенести разметку страниц в page_content - " + ex.getMessage());
+        }
+    }
+
+    private interface HtmlSource {
+        void writeTo(Writer writer) throws IOException;
+    }
+}
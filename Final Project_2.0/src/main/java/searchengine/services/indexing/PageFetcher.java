@@ -0,0 +1,163 @@
+package searchengine.services.indexing;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.ConfigConnect;
+import searchengine.config.CrawlerSettings;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Неблокирующая загрузка страниц. Один HttpClient держит пул keep-alive соединений
+ * к каждому хосту, а ответы обрабатывает несколько потоков, сколько бы запросов ни было в работе.
+ */
+@Component
+public class PageFetcher {
+
+    private final ConfigConnect configConnect;
+    private final Duration requestTimeout;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+
+    public PageFetcher(ConfigConnect configConnect, CrawlerSettings settings) {
+        this.configConnect = configConnect;
+        this.requestTimeout = Duration.ofMillis(settings.getTimeoutMillis());
+        this.executor = Executors.newFixedThreadPool(Math.max(1, settings.getFetchThreads()));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMillis()))
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Запрашивает страницу. Будущее завершается ответом с телом в байтах
+     * или ошибкой, если сервер не ответил за отведённое время.
+     */
+    public CompletableFuture<Response> fetch(String url) {
+        return fetch(url, null, null);
+    }
+
+    /**
+     * Условный запрос: если страница не менялась с указанных ETag или Last-Modified,
+     * сервер ответит 304 без тела. Отмена или тайм-аут возвращённого будущего
+     * прерывает и сам HTTP-обмен.
+     */
+    public CompletableFuture<Response> fetch(String url, String etag, String lastModified) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = newRequestBuilder(url);
+            if (etag != null && !etag.isEmpty()) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null && !lastModified.isEmpty()) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        CompletableFuture<HttpResponse<byte[]>> exchange =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<Response> result = exchange
+                .thenApply(response -> new Response(response.statusCode(),
+                        response.headers().firstValue("Content-Type").orElse(""), response.body(),
+                        retryAfterMillis(response.headers().firstValue("Retry-After").orElse("")),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null),
+                        response.uri().toString()))
+                .orTimeout(requestTimeout.toMillis() * 2, TimeUnit.MILLISECONDS);
+        result.whenComplete((response, ex) -> {
+            if (ex != null && !exchange.isDone()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Открывает тело ответа потоком, не загружая его в память целиком. Возвращает null,
+     * если сервер ответил не 200. Поток нужно закрыть.
+     */
+    public InputStream openStream(String url) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(newRequestBuilder(url).build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            return null;
+        }
+        return response.body();
+    }
+
+    private HttpRequest.Builder newRequestBuilder(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("User-Agent", configConnect.getUserAgent())
+                .header("Referer", configConnect.getReferrer())
+                .GET();
+    }
+
+    private static long retryAfterMillis(String value) {
+        try {
+            return value.isBlank() ? 0 : Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException ex) {
+            try {
+                long at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return Math.max(0, at - System.currentTimeMillis());
+            } catch (DateTimeParseException e) {
+                return 0;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * uri - адрес, с которого пришёл ответ после всех редиректов. Относительные ссылки страницы
+     * разрешаются от него, а не от канонического адреса без завершающего слэша.
+     */
+    public record Response(int code, String contentType, byte[] body, long retryAfterMillis,
+                           String etag, String lastModified, String uri) {
+
+        public boolean isHtml() {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            return type.isEmpty() || type.startsWith("text/html") || type.startsWith("application/xhtml+xml");
+        }
+
+        /**
+         * Кодировка из заголовка Content-Type или null, тогда Jsoup определит её по meta-тегу.
+         */
+        public String charset() {
+            for (String part : contentType.split(";")) {
+                String param = part.trim();
+                if (param.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                    return param.substring("charset=".length()).replace("\"", "").trim();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package searchengine.services.indexing;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import searchengine.model.Page;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пакетная вставка страниц. id берутся блоками из id_block, как и у лемм, поэтому пачка уходит
+ * одним batch-запросом, а не построчно с возвратом IDENTITY, и id известны до вставки.
+ * Блоки не пересекаются между процессами, но страницы одного сайта пишет только один процесс.
+ */
+@Component
+public class PageWriter {
+
+    private static final int PAGE_ID_BLOCK = 1000;
+
+    private static final String INSERT_PAGE = "INSERT INTO page (id, site_id, path, code, title, text, etag, " +
+            "last_modified, content_hash) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_CONTENT_HASH = "UPDATE page SET content_hash = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IdBlockAllocator pageIdBlocks;
+
+    public PageWriter(@Qualifier("writerJdbcTemplate") JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pageIdBlocks = new IdBlockAllocator(jdbcTemplate, "page", PAGE_ID_BLOCK);
+    }
+
+    /**
+     * Вставляет страницы одним пакетом и проставляет им id.
+     */
+    public void insert(List<Page> pages) {
+        if (pages.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            page.setId(pageIdBlocks.next());
+            rows.add(new Object[]{page.getId(), page.getSiteId(), page.getPath(), page.getCode(), page.getTitle(),
+                    page.getText(), page.getEtag(), page.getLastModified(), page.getContentHash()});
+        }
+        jdbcTemplate.batchUpdate(INSERT_PAGE, rows, new int[]{Types.INTEGER, Types.INTEGER, Types.VARCHAR,
+                Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.CHAR});
+    }
+
+    /**
+     * Проставляет хеш содержимого, когда леммы страницы уже записаны.
+     */
+    public void updateContentHash(Integer pageId, String contentHash) {
+        jdbcTemplate.update(UPDATE_CONTENT_HASH, contentHash, pageId);
+    }
+}
@@ -0,0 +1,68 @@
+package searchengine.services.indexing;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Откладывает запросы к хосту по его token bucket. Ожидание происходит в таймере,
+ * а не в спящих потоках, поэтому скорость обхода растёт с числом сайтов.
+ */
+@Component
+public class PolitenessScheduler {
+
+    private final CrawlerSettings settings;
+    private final Map<String, HostRateLimiter> limiters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    public PolitenessScheduler(CrawlerSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Задаёт скорость для хоста. Crawl-delay из robots.txt не даёт ходить чаще, чем он разрешает.
+     */
+    public void register(String host, double requestsPerSecond, int burst, long crawlDelayMillis) {
+        long intervalNanos = Math.max((long) (1_000_000_000L / Math.max(requestsPerSecond, 0.001)),
+                TimeUnit.MILLISECONDS.toNanos(crawlDelayMillis));
+        limiters.compute(host, (k, limiter) -> {
+            if (limiter == null) {
+                return new HostRateLimiter(intervalNanos, burst,
+                        TimeUnit.MILLISECONDS.toNanos(settings.getMaxDelayMillis()));
+            }
+            limiter.configure(intervalNanos, burst);
+            return limiter;
+        });
+    }
+
+    public void schedule(String host, Runnable request) {
+        HostRateLimiter limiter = limiters.get(host);
+        long delay = limiter == null ? 0 : limiter.reserve();
+        if (delay <= 0) {
+            request.run();
+        } else {
+            timer.schedule(request, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Сообщает результат запроса. Код 0 означает, что ответа не было.
+     */
+    public void onResponse(String host, int code, long latencyNanos, long retryAfterMillis) {
+        HostRateLimiter limiter = limiters.get(host);
+        if (limiter != null) {
+            limiter.onResponse(code, latencyNanos, retryAfterMillis);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,60 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConfigConnect;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Правила robots.txt, загруженные не раньше суток назад, по адресу хоста.
+ * Ответ 4xx означает, что ограничений нет. Ответ 5xx, 429 или ошибка сети запрещают весь сайт,
+ * и этот запрет тоже кэшируется, на час, чтобы повторный запуск не нагружал сбойный сервер.
+ */
+@Component
+@RequiredArgsConstructor
+public class RobotsCache {
+    private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final long UNREACHABLE_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final PageFetcher pageFetcher;
+    private final ConfigConnect configConnect;
+    private final Map<String, CachedRules> cache = new ConcurrentHashMap<>();
+
+    public RobotsRules get(String url) throws InterruptedException {
+        URI uri = URI.create(url);
+        String origin = uri.getScheme() + "://" + uri.getRawAuthority();
+        CachedRules cached = cache.get(origin);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt()
+                < (cached.rules().isUnreachable() ? UNREACHABLE_TTL_MILLIS : TTL_MILLIS)) {
+            return cached.rules();
+        }
+        String robotsUrl = origin + "/robots.txt";
+        RobotsRules rules;
+        try {
+            PageFetcher.Response response = pageFetcher.fetch(robotsUrl).get();
+            if (response.code() == 200) {
+                rules = RobotsRules.parse(new String(response.body(), StandardCharsets.UTF_8),
+                        configConnect.getRobotsAgent());
+            } else if (response.code() >= 500 || response.code() == 429) {
+                System.out.println("robots.txt недоступен - " + robotsUrl + " - " + response.code());
+                rules = RobotsRules.UNREACHABLE;
+            } else {
+                rules = RobotsRules.EMPTY;
+            }
+        } catch (ExecutionException ex) {
+            System.out.println("Не удается получить robots.txt - " + robotsUrl + " - " + ex.getMessage());
+            rules = RobotsRules.UNREACHABLE;
+        }
+        cache.put(origin, new CachedRules(rules, System.currentTimeMillis()));
+        return rules;
+    }
+
+    private record CachedRules(RobotsRules rules, long loadedAt) {
+    }
+}
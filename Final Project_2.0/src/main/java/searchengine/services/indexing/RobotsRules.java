@@ -0,0 +1,164 @@
+package searchengine.services.indexing;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для нашего обходчика. Берётся группа с подходящим User-agent,
+ * а если такой нет - группа "*". Из правил Allow/Disallow побеждает самое длинное совпадение,
+ * при равной длине - Allow.
+ */
+public class RobotsRules {
+    public static final RobotsRules EMPTY = new RobotsRules(0, Collections.emptyList(), Collections.emptyList(), false);
+    /**
+     * robots.txt недоступен из-за ошибки сервера или сети: по RFC 9309 обходить сайт нельзя.
+     */
+    public static final RobotsRules UNREACHABLE = new RobotsRules(0,
+            List.of(new Rule(Pattern.compile("/"), 1, false)), Collections.emptyList(), true);
+
+    private final long crawlDelayMillis;
+    private final List<Rule> rules;
+    private final List<String> sitemaps;
+    private final boolean unreachable;
+
+    private RobotsRules(long crawlDelayMillis, List<Rule> rules, List<String> sitemaps, boolean unreachable) {
+        this.crawlDelayMillis = crawlDelayMillis;
+        this.rules = rules;
+        this.sitemaps = sitemaps;
+        this.unreachable = unreachable;
+    }
+
+    public long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    public boolean isUnreachable() {
+        return unreachable;
+    }
+
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path = pathOf(url);
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (rule.pattern().matcher(path).lookingAt() && (best == null || rule.length() > best.length()
+                    || rule.length() == best.length() && rule.allow())) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow();
+    }
+
+    /**
+     * robotsAgent - имя обходчика без версии, например SearchEngineBot. Сравнивается без учёта регистра.
+     */
+    public static RobotsRules parse(String text, String robotsAgent) {
+        String agent = robotsAgent == null ? "" : robotsAgent.trim().toLowerCase(Locale.ROOT);
+        Group anyGroup = new Group();
+        Group ownGroup = new Group();
+        boolean ownGroupFound = false;
+        List<String> sitemaps = new ArrayList<>();
+        List<Group> current = new ArrayList<>();
+        boolean groupStarted = false;
+        for (String rawLine : text.split("\r?\n|\r")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent" -> {
+                    if (groupStarted) {
+                        current.clear();
+                        groupStarted = false;
+                    }
+                    String name = value.toLowerCase(Locale.ROOT);
+                    if (name.equals("*")) {
+                        current.add(anyGroup);
+                    } else if (!agent.isEmpty() && name.equals(agent)) {
+                        current.add(ownGroup);
+                        ownGroupFound = true;
+                    }
+                }
+                case "sitemap" -> {
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                }
+                case "allow", "disallow" -> {
+                    groupStarted = true;
+                    if (!value.isEmpty()) {
+                        Rule rule = new Rule(toPattern(value), value.length(), key.equals("allow"));
+                        current.forEach(group -> group.rules.add(rule));
+                    }
+                }
+                case "crawl-delay" -> {
+                    groupStarted = true;
+                    Long delay = parseDelay(value);
+                    current.forEach(group -> group.crawlDelayMillis = delay);
+                }
+                default -> groupStarted = true;
+            }
+        }
+        Group group = ownGroupFound ? ownGroup : anyGroup;
+        if (group.rules.isEmpty() && group.crawlDelayMillis == null && sitemaps.isEmpty()) {
+            return EMPTY;
+        }
+        return new RobotsRules(group.crawlDelayMillis == null ? 0 : group.crawlDelayMillis,
+                List.copyOf(group.rules), List.copyOf(sitemaps), false);
+    }
+
+    private static Pattern toPattern(String value) {
+        StringBuilder regex = new StringBuilder();
+        boolean anchored = value.endsWith("$");
+        String path = anchored ? value.substring(0, value.length() - 1) : value;
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '*') {
+                if (i > start) {
+                    regex.append(Pattern.quote(path.substring(start, i)));
+                }
+                if (i < path.length()) {
+                    regex.append(".*");
+                }
+                start = i + 1;
+            }
+        }
+        if (anchored) {
+            regex.append('$');
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String pathOf(String url) {
+        int scheme = url.indexOf("//");
+        int start = url.indexOf('/', scheme < 0 ? 0 : scheme + 2);
+        return start < 0 ? "/" : url.substring(start);
+    }
+
+    private static Long parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds > 0 ? (long) (seconds * 1000) : null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private record Rule(Pattern pattern, int length, boolean allow) {
+    }
+
+    private static class Group {
+        private final List<Rule> rules = new ArrayList<>();
+        private Long crawlDelayMillis;
+    }
+}
@@ -0,0 +1,182 @@
+package searchengine.services.indexing;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.model.repositories.SiteRepository;
+import searchengine.services.search.InvertedIndex;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Поколения данных сайта. Полная переиндексация пишет в новую теневую строку site,
+ * а поиск читает только живую. Когда обход закончен, поколения меняются местами,
+ * и старые данные удаляются в фоне. Поколение с журналом обхода не удаляется:
+ * следующий запуск индексации продолжит его.
+ */
+@Component
+@RequiredArgsConstructor
+public class SiteGenerations {
+    private static final int DELETE_CHUNK = 10_000;
+
+    private static final String DELETE_INDEXES =
+            "DELETE FROM indexes WHERE page_id IN (SELECT id FROM page WHERE site_id = ?) LIMIT " + DELETE_CHUNK;
+    private static final String DELETE_CONTENTS =
+            "DELETE FROM page_content WHERE page_id IN (SELECT id FROM page WHERE site_id = ?) LIMIT " + DELETE_CHUNK;
+    private static final String DELETE_LEMMAS = "DELETE FROM lemma WHERE site_id = ? LIMIT " + DELETE_CHUNK;
+    private static final String DELETE_PAGES = "DELETE FROM page WHERE site_id = ? LIMIT " + DELETE_CHUNK;
+    private static final String DELETE_SITE = "DELETE FROM site WHERE id = ?";
+
+    private final SiteRepository siteRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final InvertedIndex invertedIndex;
+    private final LemmaIndexWriter lemmaIndexWriter;
+    private final CrawlCheckpoints crawlCheckpoints;
+    private final ExecutorService collector = Executors.newSingleThreadExecutor();
+
+    /**
+     * Создаёт строку site для нового поколения. Если живого поколения ещё нет,
+     * новое сразу становится живым, как при первой индексации.
+     */
+    public Site createShadow(String url, String name) {
+        Site current = findLive(url);
+        Site site = new Site();
+        site.setName(name);
+        site.setUrl(url);
+        site.setStatus(Status.INDEXING);
+        site.setLastError(null);
+        site.setStatusTime(new Timestamp(System.currentTimeMillis()));
+        site.setGeneration(current == null ? 1 : current.getGeneration() + 1);
+        site.setLive(current == null);
+        siteRepository.save(site);
+        if (current == null) {
+            invertedIndex.setLive(site.getId());
+        }
+        return site;
+    }
+
+    /**
+     * Делает поколение живым, а прежнее отправляет на удаление. Если обход поколения
+     * продолжался после перезапуска, его индекс сначала загружается из базы.
+     * Поиск переключается и прежнее поколение удаляется только после фиксации транзакции:
+     * если она откатится, живым в базе и в памяти останется прежнее.
+     */
+    @Transactional
+    public void commit(Site site, boolean resumed) {
+        if (resumed && !site.getLive()) {
+            invertedIndex.loadSite(site.getId());
+        }
+        Site previous = findLive(site.getUrl());
+        site.setLive(true);
+        site.setStatus(Status.INDEXED);
+        site.setLastError(null);
+        site.setStatusTime(new Timestamp(System.currentTimeMillis()));
+        if (previous != null && !previous.getId().equals(site.getId())) {
+            previous.setLive(false);
+            siteRepository.save(previous);
+            siteRepository.save(site);
+            afterCommit(() -> {
+                invertedIndex.switchSite(previous.getId(), site.getId());
+                collect(previous.getId());
+            });
+        } else {
+            siteRepository.save(site);
+            afterCommit(() -> invertedIndex.setLive(site.getId()));
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Неудачное поколение удаляется, а ошибка записывается живому, которое продолжает отвечать на поиск.
+     * Поколение с журналом обхода остаётся, чтобы индексацию можно было продолжить.
+     */
+    public void discard(Site site, String error) {
+        Site target = site.getLive() ? site : findLive(site.getUrl());
+        if (!site.getLive()) {
+            if (crawlCheckpoints.exists(site.getId())) {
+                site.setStatus(Status.FAILED);
+                site.setLastError(error);
+                site.setStatusTime(new Timestamp(System.currentTimeMillis()));
+                siteRepository.save(site);
+            } else {
+                collect(site.getId());
+            }
+        }
+        if (target != null) {
+            target.setStatus(Status.FAILED);
+            target.setLastError(error);
+            target.setStatusTime(new Timestamp(System.currentTimeMillis()));
+            siteRepository.save(target);
+        }
+    }
+
+    /**
+     * Удаляет теневые поколения, оставшиеся от прерванных запусков, кроме тех, что можно продолжить.
+     */
+    public void collectAbandoned() {
+        siteRepository.findShadowSites().stream()
+                .filter(site -> !crawlCheckpoints.exists(site.getId()))
+                .forEach(site -> collect(site.getId()));
+    }
+
+    /**
+     * Незаконченное поколение сайта, обход которого сохранён в журнале.
+     */
+    public Site findResumable(String url) {
+        return siteRepository.findSitesByUrl(url).stream()
+                .filter(site -> site.getStatus() != Status.INDEXED && crawlCheckpoints.exists(site.getId()))
+                .findFirst().orElse(null);
+    }
+
+    public Site findLive(String url) {
+        return siteRepository.findLiveSitesByUrl(url).stream().findFirst().orElse(null);
+    }
+
+    private void collect(Integer siteId) {
+        invertedIndex.removeSite(siteId);
+        lemmaIndexWriter.forget(siteId);
+        collector.execute(() -> {
+            try {
+                deleteInChunks(DELETE_INDEXES, siteId);
+                deleteInChunks(DELETE_LEMMAS, siteId);
+                deleteInChunks(DELETE_CONTENTS, siteId);
+                deleteInChunks(DELETE_PAGES, siteId);
+                jdbcTemplate.update(DELETE_SITE, siteId);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    private void deleteInChunks(String sql, Integer siteId) {
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sql, siteId);
+        } while (deleted > 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        collector.shutdown();
+    }
+}
@@ -0,0 +1,138 @@
+package searchengine.services.indexing;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Состояние и счётчики индексации одного сайта в рамках запуска. Счётчики увеличивают
+ * потоки обходчика без блокировок, статистика читает их в любой момент.
+ */
+public class SiteProgress {
+
+    public enum State {
+        QUEUED, CRAWLING, COMMITTING, INDEXED, FAILED, STOPPED;
+
+        private Set<State> next() {
+            return switch (this) {
+                case QUEUED -> EnumSet.of(CRAWLING, FAILED, STOPPED);
+                case CRAWLING -> EnumSet.of(COMMITTING, FAILED, STOPPED);
+                case COMMITTING -> EnumSet.of(INDEXED, FAILED);
+                default -> EnumSet.noneOf(State.class);
+            };
+        }
+
+        public boolean isFinal() {
+            return next().isEmpty();
+        }
+    }
+
+    private final String url;
+    private final String name;
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+    private final LongAdder fetched = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile long startedNanos;
+    private volatile long finishedNanos;
+    private volatile long startTime;
+
+    public SiteProgress(String url, String name) {
+        this.url = url;
+        this.name = name;
+    }
+
+    /**
+     * Переводит сайт в следующее состояние. Недопустимый переход, например из
+     * завершённого состояния, игнорируется и возвращает false.
+     */
+    public boolean moveTo(State target) {
+        while (true) {
+            State current = state.get();
+            if (!current.next().contains(target)) {
+                return false;
+            }
+            if (state.compareAndSet(current, target)) {
+                if (target == State.CRAWLING) {
+                    startedNanos = System.nanoTime();
+                    startTime = System.currentTimeMillis();
+                } else if (target.isFinal()) {
+                    finishedNanos = System.nanoTime();
+                }
+                return true;
+            }
+        }
+    }
+
+    public void onQueued() {
+        queued.increment();
+    }
+
+    public void onDequeued() {
+        queued.decrement();
+    }
+
+    public void onFetched(int code, long size) {
+        fetched.increment();
+        bytes.add(size);
+        if (code == 0 || code >= 400) {
+            failed.increment();
+        }
+    }
+
+    public void onIndexed() {
+        indexed.increment();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getFetched() {
+        return fetched.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getIndexed() {
+        return indexed.sum();
+    }
+
+    public long getQueued() {
+        return Math.max(0, queued.sum());
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Средняя скорость загрузки с начала обхода сайта.
+     */
+    public double getPagesPerSecond() {
+        long started = startedNanos;
+        if (started == 0) {
+            return 0;
+        }
+        long end = state.get().isFinal() ? finishedNanos : System.nanoTime();
+        double seconds = (end - started) / 1e9;
+        return seconds > 0 ? fetched.sum() / seconds : 0;
+    }
+}
@@ -0,0 +1,150 @@
+package searchengine.services.indexing;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Потоковое чтение sitemap.xml через StAX. Поддерживает gzip и вложенные sitemapindex,
+ * адреса отдаются по одному, поэтому размер файла не влияет на память.
+ */
+public class SitemapParser {
+    private static final int MAX_DEPTH = 3;
+    private static final int MAX_SITEMAPS = 1000;
+    private static final double DEFAULT_PRIORITY = 0.5;
+
+    private final Source source;
+    private final AtomicBoolean indexingInProcess;
+    private final XMLInputFactory factory;
+    private final Set<String> readSitemaps = new HashSet<>();
+
+    public SitemapParser(Source source, AtomicBoolean indexingInProcess) {
+        this.source = source;
+        this.indexingInProcess = indexingInProcess;
+        this.factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public void read(String sitemapUrl, Consumer<Entry> consumer) throws InterruptedException {
+        read(sitemapUrl, consumer, 0);
+    }
+
+    private void read(String sitemapUrl, Consumer<Entry> consumer, int depth) throws InterruptedException {
+        if (depth > MAX_DEPTH || readSitemaps.size() >= MAX_SITEMAPS || !readSitemaps.add(sitemapUrl)) {
+            return;
+        }
+        List<String> nested = new ArrayList<>();
+        try (InputStream body = source.open(sitemapUrl)) {
+            if (body != null) {
+                parse(unzip(body), consumer, nested);
+            }
+        } catch (IOException | XMLStreamException ex) {
+            System.out.println("Не удается прочитать sitemap - " + sitemapUrl + " - " + ex.getMessage());
+        }
+        for (String url : nested) {
+            if (!indexingInProcess.get()) {
+                return;
+            }
+            read(url, consumer, depth + 1);
+        }
+    }
+
+    private void parse(InputStream body, Consumer<Entry> consumer, List<String> nested) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(body);
+        try {
+            String loc = null;
+            String lastmod = null;
+            String priority = null;
+            while (reader.hasNext() && indexingInProcess.get()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "url", "sitemap" -> {
+                            loc = null;
+                            lastmod = null;
+                            priority = null;
+                        }
+                        case "loc" -> loc = reader.getElementText().trim();
+                        case "lastmod" -> lastmod = reader.getElementText().trim();
+                        case "priority" -> priority = reader.getElementText().trim();
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && loc != null && !loc.isEmpty()) {
+                    if (reader.getLocalName().equals("url")) {
+                        consumer.accept(new Entry(loc, parseLastmod(lastmod), parsePriority(priority)));
+                    } else if (reader.getLocalName().equals("sitemap")) {
+                        nested.add(loc);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static InputStream unzip(InputStream body) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(body);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        return first == 0x1f && second == 0x8b ? new GZIPInputStream(buffered) : buffered;
+    }
+
+    private static long parseLastmod(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            try {
+                return LocalDate.parse(value.length() > 10 ? value.substring(0, 10) : value)
+                        .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return 0;
+            }
+        }
+    }
+
+    private static double parsePriority(String value) {
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_PRIORITY;
+        }
+        try {
+            return Math.max(0, Math.min(1, Double.parseDouble(value)));
+        } catch (NumberFormatException ex) {
+            return DEFAULT_PRIORITY;
+        }
+    }
+
+    /**
+     * Открывает sitemap потоком или возвращает null, если сервер ответил не 200.
+     */
+    public interface Source {
+        InputStream open(String url) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Адрес из sitemap. lastModified - время в миллисекундах или 0, если сайт его не указал.
+     */
+    public record Entry(String loc, long lastModified, double priority) {
+    }
+}
@@ -1,148 +1,231 @@
 package searchengine.services.indexing;
 
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
-import searchengine.model.Lemma;
 import searchengine.model.Page;
-import searchengine.model.SearchIndex;
-import searchengine.model.repositories.LemmaRepository;
-import searchengine.model.repositories.SearchIndexRepository;
+import searchengine.services.morphology.Lemmatizer;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TextAnalyzer {
+    private static final int NOT_LETTER = 0;
+    private static final int LATIN = 1;
+    private static final int CYRILLIC = 2;
+
     private final HashMap<String, HashSet<String>> formsLemmas = new HashMap<>();
+    private final Lemmatizer lemmatizer;
 
-    public void analyze(Page page, LemmaRepository lemmaRepository,
-                        SearchIndexRepository searchIndexRepository, AtomicBoolean indexingInProcess) {
-        String text = getText(page);
-        Integer pageId = page.getId();
-        if (!text.equals("")) {
-            String[] words = getArrayWords(text);
-            List<String> listWords = selectWords(words, indexingInProcess);
-            if (!indexingInProcess.get()) {
-                return;
+    public TextAnalyzer(Lemmatizer lemmatizer) {
+        this.lemmatizer = lemmatizer;
+    }
+
+    public void analyze(Page page, LemmaIndexWriter lemmaIndexWriter, AtomicBoolean indexingInProcess) {
+        HashMap<String, WordOffsets> positionsWords = collectLemmas(page, indexingInProcess);
+        if (!positionsWords.isEmpty() && indexingInProcess.get()) {
+            lemmaIndexWriter.add(page.getSiteId(), page.getId(), positionsWords, formsLemmas);
+        }
+    }
+
+    /**
+     * Разбирает текст страницы на леммы, не обращаясь к базе. Сохранить результат можно позже,
+     * когда у страницы появится id.
+     */
+    public HashMap<String, WordOffsets> collectLemmas(Page page, AtomicBoolean indexingInProcess) {
+        String text = page.getText();
+        if (text == null || text.isBlank()) {
+            return new HashMap<>();
+        }
+        return selectWords(text, indexingInProcess);
+    }
+
+    public Map<String, HashSet<String>> getFormsLemmas() {
+        return formsLemmas;
+    }
+
+    /**
+     * Заполняет заголовок и текст страницы без разметки из уже разобранного документа,
+     * поэтому HTML страницы разбирается один раз. Заголовок и текст сохраняются вместе
+     * со страницей, чтобы поиск не разбирал HTML повторно.
+     */
+    public void extractText(Page page, Document document) {
+        StringBuilder titleBuilder = new StringBuilder();
+        StringBuilder bodyBuilder = new StringBuilder();
+        document.getElementsByTag("title").forEach(element -> titleBuilder.append(element.text()));
+        document.getElementsByTag("body").forEach(element -> bodyBuilder.append(element.text()));
+        page.setTitle(titleBuilder.toString());
+        page.setText(titleBuilder.append(" ").append(bodyBuilder).toString().trim());
+        page.setContentHash(contentHash(page.getText()));
+    }
+
+    /**
+     * Хеш текста страницы. Изменения в разметке, которые не меняют текст, не требуют переиндексации.
+     */
+    private static String contentHash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Возвращает для каждой леммы смещения её слов в тексте страницы.
+     * Число смещений - это ранг леммы на странице.
+     * Текст проходится один раз: буквы определяются по диапазонам символов, регистр и ё
+     * приводятся прямо в буфере слова. Строка слова и обращение к лемматизатору нужны
+     * только при первой встрече слова на странице, дальше оно находится в таблице токенов.
+     */
+    private HashMap<String, WordOffsets> selectWords(String text, AtomicBoolean indexingInProcess) {
+        HashMap<String, WordOffsets> positionsWords = new HashMap<>();
+        TokenTable tokens = new TokenTable();
+        char[] word = new char[32];
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int alphabet = alphabet(text.charAt(i));
+            if (alphabet == NOT_LETTER) {
+                i++;
+                continue;
             }
-            HashMap<String, Integer> repeatsWords = calculateRepeats(listWords);
-            List<Lemma> lemmasList = lemmaRepository.findLemmasBySiteId(page.getSiteId());
-            Map<String, Lemma> lemmaListMap = new HashMap<>();
-            for (Lemma l : lemmasList) {
-                lemmaListMap.put(l.getLemma(), l);
+            if (!indexingInProcess.get()) {
+                break;
             }
-            Map<String, Lemma> lemmaMap = new HashMap<>();
-            repeatsWords.forEach((key, value) -> {
-                HashSet<String> listLemmas = formsLemmas.get(key);
-                Lemma lemma = new Lemma();
-                if (lemmaMap.containsKey(key)) {
-                    lemma = lemmaMap.get(key);
-                    String[] arrayLemmas = lemma.getFormsLemmas().split(",");
-                    Collections.addAll(listLemmas, arrayLemmas);
+            int start = i;
+            int size = 0;
+            int hash = 0;
+            boolean mixed = false;
+            for (; i < length; i++) {
+                char c = text.charAt(i);
+                int letter = alphabet(c);
+                if (letter == NOT_LETTER) {
+                    break;
                 }
-                else if (lemmaListMap.containsKey(key)) {
-                    lemma = lemmaListMap.get(key);
-                    lemma.setFrequency(lemma.getFrequency() + 1);
-                    String[] arrayLemmas = lemma.getFormsLemmas().split(",");
-                    Collections.addAll(listLemmas, arrayLemmas);
-                } else {
-                    lemma.setSiteId(page.getSiteId());
-                    lemma.setLemma(key);
-                    lemma.setFrequency(1);
+                mixed |= letter != alphabet;
+                char folded = fold(c);
+                if (size == word.length) {
+                    word = Arrays.copyOf(word, size * 2);
                 }
-                lemma.setFormsLemmas(String.join(",", listLemmas));
-                lemmaMap.put(key, lemma);
-            });
-            lemmaRepository.saveAll(new ArrayList<>(lemmaMap.values()));
-            List<SearchIndex> indexesList = new ArrayList<>();
-            repeatsWords.forEach((key, value) -> {
-                        SearchIndex searchIndex = new SearchIndex();
-                        searchIndex.setPageId(pageId);
-                        searchIndex.setLemmaId(getLemmaId(key, lemmaRepository, page.getSiteId()));
-                        searchIndex.setRank(value.floatValue());
-                        indexesList.add(searchIndex);
-            });
-            searchIndexRepository.saveAll(indexesList);
+                word[size++] = folded;
+                hash = 31 * hash + folded;
+            }
+            if (mixed) {
+                continue;
+            }
+            int slot = tokens.slot(word, size, hash);
+            if (tokens.isEmpty(slot)) {
+                String key = new String(word, 0, size);
+                tokens.put(slot, key, hash, lemmaOffsets(key, text.substring(start, i), positionsWords));
+                slot = tokens.slot(word, size, hash);
+            }
+            WordOffsets offsets = tokens.get(slot);
+            if (offsets != null) {
+                offsets.add(start);
+            }
         }
+        return positionsWords;
     }
 
-    private String getText(Page page) {
-        String content = page.getContent();
-        Document document = Jsoup.parse(content);
-        StringBuilder titleBuilder = new StringBuilder();
-        StringBuilder bodyBuilder = new StringBuilder();
+    private WordOffsets lemmaOffsets(String word, String original, HashMap<String, WordOffsets> positionsWords) {
+        String lemma = lemmatizer.getLemma(word);
+        if (lemma == null) {
+            return null;
+        }
+        HashSet<String> forms = formsLemmas.computeIfAbsent(lemma, k -> new HashSet<>());
+        forms.add(lemma);
+        forms.add(original.replace('ё', 'е').replace('Ё', 'Е'));
+        return positionsWords.computeIfAbsent(lemma, k -> new WordOffsets());
+    }
 
-        if (content.contains("</title>")) {
-            Elements elementsTitle = document.getElementsByTag("title");
-            elementsTitle.forEach(element -> titleBuilder.append(element.text()));
+    private static int alphabet(char c) {
+        if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+            return LATIN;
         }
-        if (content.contains("</body>")) {
-            Elements elementsBody = document.getElementsByTag("body");
-            elementsBody.forEach(element -> bodyBuilder.append(element.text()));
+        if (c >= 'А' && c <= 'я' || c == 'ё' || c == 'Ё') {
+            return CYRILLIC;
         }
-        titleBuilder.append(bodyBuilder);
-        return titleBuilder.toString();
+        return NOT_LETTER;
     }
 
-    private String[] getArrayWords(String text) {
-        return text.replaceAll("[^a-zA-Zа-яА-ЯёЁ]", " ").replaceAll("ё", "е").
-                replaceAll("Ё", "Е").trim().split("\\s+");
+    private static char fold(char c) {
+        if (c >= 'A' && c <= 'Z' || c >= 'А' && c <= 'Я') {
+            return (char) (c + 32);
+        }
+        return c == 'ё' || c == 'Ё' ? 'е' : c;
     }
 
-    private List<String> selectWords(String[] words, AtomicBoolean indexingInProcess) {
-        ArrayList<String> listWords = new ArrayList<>();
-        for (String w : words) {
-            if (!indexingInProcess.get()) {
-                break;
-            }
-            String s = w.toLowerCase();
-            try {
-                LuceneMorphology luceneMorph;
-                if (s.matches("[а-я]+")) {
-                    luceneMorph = new RussianLuceneMorphology();
-                } else if (s.matches("[a-z]+")) {
-                    luceneMorph = new EnglishLuceneMorphology();
-                } else {
-                    continue;
+    /**
+     * Различные слова страницы в открытой адресации. Значение - смещения леммы слова
+     * или null, если слово не индексируется.
+     */
+    private static final class TokenTable {
+        private String[] keys = new String[256];
+        private int[] hashes = new int[256];
+        private WordOffsets[] values = new WordOffsets[256];
+        private int size;
+
+        int slot(char[] word, int length, int hash) {
+            int mask = keys.length - 1;
+            for (int i = (hash ^ hash >>> 16) & mask; ; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key == null || hashes[i] == hash && matches(key, word, length)) {
+                    return i;
                 }
-                String word = luceneMorph.getMorphInfo(s.trim()).get(0);
-                if (!(word.endsWith("МЕЖД") || word.endsWith("ПРЕДЛ")
-                        || word.endsWith("ЧАСТ") || word.endsWith("СОЮЗ"))) {
-                    word = word.substring(0, word.indexOf("|"));
-                } else {
+            }
+        }
+
+        boolean isEmpty(int slot) {
+            return keys[slot] == null;
+        }
+
+        WordOffsets get(int slot) {
+            return values[slot];
+        }
+
+        void put(int slot, String key, int hash, WordOffsets value) {
+            keys[slot] = key;
+            hashes[slot] = hash;
+            values[slot] = value;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        private void grow() {
+            String[] oldKeys = keys;
+            int[] oldHashes = hashes;
+            WordOffsets[] oldValues = values;
+            keys = new String[oldKeys.length * 2];
+            hashes = new int[oldKeys.length * 2];
+            values = new WordOffsets[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == null) {
                     continue;
                 }
-                listWords.add(word);
-                HashSet<String> list = new HashSet<>();
-                if (formsLemmas.containsKey(word)) {
-                    list = formsLemmas.get(word);
+                int i = (oldHashes[j] ^ oldHashes[j] >>> 16) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
                 }
-                list.add(word);
-                list.add(w);
-                formsLemmas.put(word, list);
-            } catch (Exception ex) {
-                ex.printStackTrace();
+                keys[i] = oldKeys[j];
+                hashes[i] = oldHashes[j];
+                values[i] = oldValues[j];
             }
         }
-        return new ArrayList<>(listWords);
-    }
 
-    private HashMap<String, Integer> calculateRepeats(List<String> list) {
-        HashMap<String, Integer> repeats = new HashMap<>();
-        for (String word : list) {
-            int oldCount = 0;
-            if (repeats.get(word) != null) {
-                oldCount = repeats.get(word);
+        private static boolean matches(String key, char[] word, int length) {
+            if (key.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key.charAt(i) != word[i]) {
+                    return false;
+                }
             }
-            repeats.put(word, oldCount + 1);
+            return true;
         }
-        return repeats;
-    }
-
-    private Integer getLemmaId(String lemma, LemmaRepository lemmaRepository, Integer siteId) {
-        return lemmaRepository.findLemmasByLemmaAndSiteId(lemma, siteId).get(0).getId();
     }
-}
\ No newline at end of file
+}
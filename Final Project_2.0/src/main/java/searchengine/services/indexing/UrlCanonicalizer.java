@@ -0,0 +1,193 @@
+package searchengine.services.indexing;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Приводит адреса сайта к одному виду, чтобы одна страница не обходилась и не индексировалась
+ * несколько раз. Схема, хост и порт берутся от корня сайта, убираются фрагмент, index.html,
+ * сессии и метки рекламных кампаний, остальные параметры сортируются. Завершающий слэш остаётся
+ * как в ссылке: сайт отвечает на /section и /section/ по-разному, часто переадресацией.
+ */
+public class UrlCanonicalizer {
+    private static final int MAX_PATH_LENGTH = 255;
+    private static final Set<String> IGNORED_PARAMETERS = Set.of("gclid", "dclid", "fbclid", "yclid", "ysclid",
+            "_openstat", "mc_cid", "mc_eid", "phpsessid", "jsessionid", "sessionid", "sid");
+    private static final Pattern INDEX_FILE =
+            Pattern.compile("(?i)/(index|default)\\.(html?|php|aspx?|jsp)$");
+    private static final Pattern SESSION_PARAMETER = Pattern.compile("(?i);jsessionid=[^/?]*");
+    private static final Pattern SKIPPED_EXTENSION = Pattern.compile("(?i).*\\.(jpe?g|png|gif|bmp|svg|webp|ico|tiff?"
+            + "|pdf|docx?|xlsx?|pptx?|odt|rtf|txt|csv|zip|rar|7z|gz|tar|exe|dmg|apk|iso"
+            + "|mp3|mp4|avi|mov|wmv|flv|webm|ogg|wav|css|js|json|xml|woff2?|ttf|eot)$");
+    private static final String ALLOWED_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789"
+            + "-._~:/?#[]@!$&'()*+,;=%";
+
+    private final String rootLink;
+    private final String rootScheme;
+    private final String rootHost;
+    private final int rootPort;
+    private final String rootPath;
+
+    public UrlCanonicalizer(String rootLink) {
+        URI root = URI.create(rootLink);
+        this.rootLink = rootLink;
+        this.rootScheme = root.getScheme().toLowerCase(Locale.ROOT);
+        this.rootHost = root.getHost().toLowerCase(Locale.ROOT);
+        this.rootPort = normalizePort(rootScheme, root.getPort());
+        this.rootPath = root.getRawPath() == null || root.getRawPath().isEmpty() ? "/" : root.getRawPath();
+    }
+
+    /**
+     * Возвращает канонический адрес или null, если адрес не ведёт на HTML-страницу
+     * или не помещается в колонку path.
+     */
+    public String canonicalize(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        String raw = url.trim();
+        int fragment = raw.indexOf('#');
+        if (fragment >= 0) {
+            raw = raw.substring(0, fragment);
+        }
+        URI uri;
+        try {
+            uri = URI.create(encodeIllegal(raw)).normalize();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return null;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return null;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        int port = normalizePort(scheme, uri.getPort());
+        if (stripWww(host).equals(stripWww(rootHost))) {
+            scheme = rootScheme;
+            host = rootHost;
+            port = rootPort;
+        }
+        String path = canonicalPath(uri.getRawPath());
+        if (SKIPPED_EXTENSION.matcher(path).matches()) {
+            return null;
+        }
+        String query = canonicalQuery(uri.getRawQuery());
+
+        StringBuilder result = new StringBuilder(scheme).append("://").append(host);
+        if (port != -1) {
+            result.append(':').append(port);
+        }
+        result.append(path);
+        if (query != null) {
+            result.append('?').append(query);
+        }
+        String canonical = result.toString();
+        if (canonical.startsWith(rootLink) && canonical.length() - rootLink.length() + 1 > MAX_PATH_LENGTH) {
+            return null;
+        }
+        return canonical;
+    }
+
+    private String canonicalPath(String rawPath) {
+        String path = rawPath == null || rawPath.isEmpty() ? "/" : rawPath;
+        path = normalizeEscapes(SESSION_PARAMETER.matcher(path).replaceAll(""));
+        path = INDEX_FILE.matcher(path).replaceFirst("/");
+        return (path + "/").equals(rootPath) ? rootPath : path;
+    }
+
+    private static String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int eq = parameter.indexOf('=');
+            String name = (eq < 0 ? parameter : parameter.substring(0, eq)).toLowerCase(Locale.ROOT);
+            if (name.startsWith("utm_") || IGNORED_PARAMETERS.contains(name)) {
+                continue;
+            }
+            parameters.add(normalizeEscapes(parameter));
+        }
+        if (parameters.isEmpty()) {
+            return null;
+        }
+        Collections.sort(parameters);
+        return String.join("&", parameters);
+    }
+
+    private static int normalizePort(String scheme, int port) {
+        return scheme.equals("http") && port == 80 || scheme.equals("https") && port == 443 ? -1 : port;
+    }
+
+    private static String stripWww(String host) {
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    /**
+     * Кодирует символы, недопустимые в URI (пробелы, кириллицу), оставляя уже закодированные как есть.
+     */
+    private static String encodeIllegal(String url) {
+        StringBuilder encoded = null;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (ALLOWED_CHARS.indexOf(c) >= 0) {
+                if (encoded != null) {
+                    encoded.append(c);
+                }
+                continue;
+            }
+            if (encoded == null) {
+                encoded = new StringBuilder(url.length() + 16).append(url, 0, i);
+            }
+            int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+            }
+            i = end - 1;
+        }
+        return encoded == null ? url : encoded.toString();
+    }
+
+    /**
+     * Раскодирует escape-последовательности незарезервированных символов и приводит остальные
+     * к верхнему регистру: %7e и ~ дают один адрес.
+     */
+    private static String normalizeEscapes(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < value.length()) {
+                int high = Character.digit(value.charAt(i + 1), 16);
+                int low = Character.digit(value.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    char decoded = (char) (high * 16 + low);
+                    if (Character.isLetterOrDigit(decoded) && decoded < 128 || "-._~".indexOf(decoded) >= 0) {
+                        result.append(decoded);
+                    } else {
+                        result.append('%').append(Character.toUpperCase(value.charAt(i + 1)))
+                                .append(Character.toUpperCase(value.charAt(i + 2)));
+                    }
+                    i += 2;
+                    continue;
+                }
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,174 @@
+package searchengine.services.indexing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Множество посещённых адресов. Хранятся только 64-битные отпечатки в открытой адресации
+ * на массиве long, по 8-16 байт на адрес. Вставка атомарна: из двух потоков с одним адресом
+ * true получит только один. Размер ограничен точно: после maxSize адресов новые не принимаются,
+ * и это видно по {@link #isFull}, чтобы отличить отказ от повтора.
+ */
+public class UrlFingerprintSet {
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final long EMPTY = 0;
+
+    private final int maxSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile AtomicLongArray slots = new AtomicLongArray(INITIAL_CAPACITY);
+    private volatile boolean full;
+
+    public UrlFingerprintSet(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Добавляет адрес. Возвращает false, если адрес уже был или множество заполнено до предела.
+     * На пределе таблица больше не растёт: в ней остаются свободные ячейки, и повтор
+     * по-прежнему отличается от нового адреса.
+     */
+    public boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        while (true) {
+            lock.readLock().lock();
+            try {
+                AtomicLongArray table = slots;
+                if (size.get() >= maxSize || (size.get() + 1L) * 4 <= table.length() * 3L) {
+                    return insert(table, fingerprint);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (!grow()) {
+                if (!contains(url)) {
+                    full = true;
+                }
+                return false;
+            }
+        }
+    }
+
+    public boolean contains(String url) {
+        long fingerprint = fingerprint(url);
+        lock.readLock().lock();
+        try {
+            AtomicLongArray table = slots;
+            int mask = table.length() - 1;
+            for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+                long slot = table.get(i);
+                if (slot == fingerprint) {
+                    return true;
+                }
+                if (slot == EMPTY) {
+                    return false;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Хотя бы один новый адрес не был добавлен из-за предела размера.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    private boolean insert(AtomicLongArray table, long fingerprint) {
+        int mask = table.length() - 1;
+        for (int i = (int) fingerprint & mask; ; i = (i + 1) & mask) {
+            long slot = table.get(i);
+            if (slot == EMPTY) {
+                if (!reserve()) {
+                    if (table.get(i) == fingerprint) {
+                        return false;
+                    }
+                    full = true;
+                    return false;
+                }
+                if (table.compareAndSet(i, EMPTY, fingerprint)) {
+                    return true;
+                }
+                size.decrementAndGet();
+                slot = table.get(i);
+            }
+            if (slot == fingerprint) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Занимает место под новый адрес до вставки, поэтому параллельные вставки не превышают maxSize.
+     */
+    private boolean reserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= maxSize) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Удваивает таблицу. Пока идёт перенос, вставки и проверки ждут на блокировке.
+     */
+    private boolean grow() {
+        lock.writeLock().lock();
+        try {
+            AtomicLongArray table = slots;
+            if (size.get() >= maxSize || (size.get() + 1L) * 4 <= table.length() * 3L) {
+                return true;
+            }
+            if (table.length() >= MAX_CAPACITY) {
+                return false;
+            }
+            AtomicLongArray grown = new AtomicLongArray(table.length() * 2);
+            int mask = grown.length() - 1;
+            for (int i = 0; i < table.length(); i++) {
+                long fingerprint = table.get(i);
+                if (fingerprint == EMPTY) {
+                    continue;
+                }
+                int j = (int) fingerprint & mask;
+                while (grown.get(j) != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                grown.set(j, fingerprint);
+            }
+            slots = grown;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * FNV-1a по символам адреса с перемешиванием из MurmurHash3. Ноль занят под пустую ячейку.
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+}
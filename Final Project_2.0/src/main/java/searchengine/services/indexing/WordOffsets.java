@@ -0,0 +1,26 @@
+package searchengine.services.indexing;
+
+import java.util.Arrays;
+
+/**
+ * Смещения слов одной леммы в тексте страницы, в порядке возрастания, без упаковки в Integer.
+ */
+public final class WordOffsets {
+    private int[] offsets = new int[4];
+    private int size;
+
+    void add(int offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offsets[size++] = offset;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] array() {
+        return offsets;
+    }
+}
@@ -0,0 +1,79 @@
+package searchengine.services.morphology;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class Lemmatizer {
+
+    private static final int CACHE_LIMIT = 200_000;
+    private static final String NOT_LEMMA = "";
+    private static final String[] SERVICE_PARTS = {"МЕЖД", "ПРЕДЛ", "ЧАСТ", "СОЮЗ"};
+
+    private final LuceneMorphology russianMorphology;
+    private final LuceneMorphology englishMorphology;
+    private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+
+    public Lemmatizer() throws IOException {
+        russianMorphology = new RussianLuceneMorphology();
+        englishMorphology = new EnglishLuceneMorphology();
+    }
+
+    /**
+     * Возвращает базовую форму слова в нижнем регистре
+     * или null, если слово не подлежит индексации (служебная часть речи, смешанный алфавит).
+     * Словари загружаются один раз, результаты кэшируются, поэтому метод безопасно
+     * вызывать одновременно из потоков индексации и поиска.
+     */
+    public String getLemma(String word) {
+        String lemma = cache.get(word);
+        if (lemma == null) {
+            lemma = findLemma(word);
+            if (cache.size() < CACHE_LIMIT) {
+                cache.putIfAbsent(word, lemma);
+            }
+        }
+        return lemma.equals(NOT_LEMMA) ? null : lemma;
+    }
+
+    private String findLemma(String word) {
+        LuceneMorphology luceneMorph;
+        if (isWithin(word, 'а', 'я')) {
+            luceneMorph = russianMorphology;
+        } else if (isWithin(word, 'a', 'z')) {
+            luceneMorph = englishMorphology;
+        } else {
+            return NOT_LEMMA;
+        }
+        try {
+            String info = luceneMorph.getMorphInfo(word).get(0);
+            for (String part : SERVICE_PARTS) {
+                if (info.endsWith(part)) {
+                    return NOT_LEMMA;
+                }
+            }
+            return info.substring(0, info.indexOf("|"));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return NOT_LEMMA;
+        }
+    }
+
+    private static boolean isWithin(String word, char from, char to) {
+        if (word.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < from || c > to) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
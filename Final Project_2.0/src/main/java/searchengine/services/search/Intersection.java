@@ -0,0 +1,74 @@
+package searchengine.services.search;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Пересечение списков страниц для запроса со всеми словами (AND).
+ * Обход начинается с самого редкого списка, остальные догоняют кандидатов
+ * через {@link PostingList.Cursor#advance(int)}; как только кандидатов не осталось,
+ * оставшиеся списки не читаются.
+ */
+public final class Intersection {
+
+    private final int[] pageIds;
+    private final float[][] ranks;
+    private final int size;
+
+    private Intersection(int[] pageIds, float[][] ranks, int size) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+        this.size = size;
+    }
+
+    public static Intersection of(List<PostingList> lists) {
+        int terms = lists.size();
+        int[] order = IntStream.range(0, terms).boxed()
+                .sorted(Comparator.comparingInt(term -> lists.get(term).size()))
+                .mapToInt(Integer::intValue).toArray();
+        PostingList rarest = lists.get(order[0]);
+        int[] pageIds = new int[rarest.size()];
+        float[][] ranks = new float[terms][];
+        ranks[order[0]] = new float[rarest.size()];
+        int count = 0;
+        PostingList.Cursor rarestCursor = rarest.cursor();
+        while (rarestCursor.next()) {
+            pageIds[count] = rarestCursor.pageId();
+            ranks[order[0]][count++] = rarestCursor.rank();
+        }
+        for (int t = 1; t < terms && count > 0; t++) {
+            int term = order[t];
+            PostingList.Cursor cursor = lists.get(term).cursor();
+            float[] termRanks = new float[count];
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (!cursor.advance(pageIds[i])) {
+                    break;
+                }
+                if (cursor.pageId() == pageIds[i]) {
+                    pageIds[kept] = pageIds[i];
+                    for (int previous = 0; previous < t; previous++) {
+                        ranks[order[previous]][kept] = ranks[order[previous]][i];
+                    }
+                    termRanks[kept++] = cursor.rank();
+                }
+            }
+            ranks[term] = termRanks;
+            count = kept;
+        }
+        return new Intersection(pageIds, ranks, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pageId(int index) {
+        return pageIds[index];
+    }
+
+    public float rank(int term, int index) {
+        return ranks[term][index];
+    }
+}
@@ -0,0 +1,198 @@
+package searchengine.services.search;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class InvertedIndex {
+
+    private static final String SELECT_LIVE_SITES = "SELECT id FROM site WHERE live = 1";
+    private static final String SELECT_LEMMAS =
+            "SELECT l.id, l.site_id, l.lemma FROM lemma l JOIN site s ON s.id = l.site_id WHERE s.live = 1";
+    private static final String SELECT_INDEXES =
+            "SELECT i.lemma_id, i.page_id, i.rank_index FROM indexes i " +
+            "JOIN lemma l ON l.id = i.lemma_id JOIN site s ON s.id = l.site_id " +
+            "WHERE s.live = 1 ORDER BY i.lemma_id, i.page_id";
+    private static final String SELECT_SITE_LEMMAS = "SELECT id, lemma FROM lemma WHERE site_id = ?";
+    private static final String SELECT_SITE_INDEXES =
+            "SELECT i.lemma_id, i.page_id, i.rank_index FROM indexes i JOIN lemma l ON l.id = i.lemma_id " +
+            "WHERE l.site_id = ? ORDER BY i.lemma_id, i.page_id";
+
+    private final DataSource dataSource;
+    private final Map<Integer, Map<String, Integer>> siteLemmas = new ConcurrentHashMap<>();
+    private final Map<Integer, PostingList> postings = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> siteGenerations = new ConcurrentHashMap<>();
+    private final Set<Integer> liveSites = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Загружает таблицы lemma и indexes в память при старте приложения.
+     * Дальше индекс обновляется только через {@link #add} и методы удаления.
+     */
+    @PostConstruct
+    public void load() {
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        streaming.query(SELECT_LIVE_SITES, rs -> {
+            liveSites.add(rs.getInt("id"));
+        });
+        streaming.query(SELECT_LEMMAS, rs -> {
+            siteLemmas.computeIfAbsent(rs.getInt("site_id"), k -> new ConcurrentHashMap<>())
+                    .put(rs.getString("lemma"), rs.getInt("id"));
+        });
+        PostingLoader loader = new PostingLoader();
+        streaming.query(SELECT_INDEXES, loader);
+        loader.finish();
+    }
+
+    /**
+     * Перечитывает из базы леммы и списки страниц одного сайта. Нужно для поколения,
+     * обход которого начался до перезапуска приложения: его ранние страницы в памяти не были.
+     */
+    public void loadSite(Integer siteId) {
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        Map<String, Integer> lemmas = new ConcurrentHashMap<>();
+        streaming.query(SELECT_SITE_LEMMAS, rs -> {
+            lemmas.put(rs.getString("lemma"), rs.getInt("id"));
+        }, siteId);
+        siteLemmas.put(siteId, lemmas);
+        PostingLoader loader = new PostingLoader();
+        streaming.query(SELECT_SITE_INDEXES, loader, siteId);
+        loader.finish();
+        nextGeneration(siteId);
+    }
+
+    public Integer getLemmaId(Integer siteId, String lemma) {
+        Map<String, Integer> lemmas = siteLemmas.get(siteId);
+        return lemmas == null ? null : lemmas.get(lemma);
+    }
+
+    public List<Integer> findLemmaIds(String lemma) {
+        List<Integer> lemmaIds = new ArrayList<>();
+        for (Integer siteId : liveSites) {
+            Map<String, Integer> lemmas = siteLemmas.get(siteId);
+            Integer lemmaId = lemmas == null ? null : lemmas.get(lemma);
+            if (lemmaId != null) {
+                lemmaIds.add(lemmaId);
+            }
+        }
+        return lemmaIds;
+    }
+
+    /**
+     * Сайты, по которым идёт поиск. Теневые поколения пишутся в индекс, но в поиск не попадают,
+     * пока не станут живыми.
+     */
+    public Set<Integer> getSiteIds() {
+        return Collections.unmodifiableSet(liveSites);
+    }
+
+    public void setLive(Integer siteId) {
+        liveSites.add(siteId);
+        nextGeneration(siteId);
+    }
+
+    /**
+     * Заменяет в поиске старое поколение сайта новым.
+     */
+    public void switchSite(Integer oldSiteId, Integer newSiteId) {
+        liveSites.add(newSiteId);
+        removeSite(oldSiteId);
+        nextGeneration(newSiteId);
+    }
+
+    /**
+     * Поколение индекса сайта увеличивается при любом изменении его списков страниц.
+     * Для siteId = 0 возвращается общее поколение всех сайтов.
+     */
+    public long getGeneration(Integer siteId) {
+        if (siteId == null || siteId <= 0) {
+            return generation.get();
+        }
+        AtomicLong siteGeneration = siteGenerations.get(siteId);
+        return siteGeneration == null ? 0 : siteGeneration.get();
+    }
+
+    public PostingList getPostings(Integer lemmaId) {
+        return postings.getOrDefault(lemmaId, PostingList.EMPTY);
+    }
+
+    public void add(Integer siteId, String lemma, Integer lemmaId, int[] pageIds, float[] ranks) {
+        siteLemmas.computeIfAbsent(siteId, k -> new ConcurrentHashMap<>()).putIfAbsent(lemma, lemmaId);
+        postings.compute(lemmaId, (k, list) -> (list == null ? PostingList.EMPTY : list).merge(pageIds, ranks));
+        nextGeneration(siteId);
+    }
+
+    public void removePage(Integer siteId, Integer pageId, Collection<Integer> lemmaIds) {
+        Set<Integer> removed = Collections.singleton(pageId);
+        for (Integer lemmaId : lemmaIds) {
+            postings.computeIfPresent(lemmaId, (k, list) -> list.remove(removed));
+        }
+        nextGeneration(siteId);
+    }
+
+    public void removeSite(Integer siteId) {
+        boolean wasLive = liveSites.remove(siteId);
+        Map<String, Integer> lemmas = siteLemmas.remove(siteId);
+        if (lemmas != null) {
+            postings.keySet().removeAll(lemmas.values());
+        }
+        siteGenerations.computeIfAbsent(siteId, k -> new AtomicLong()).incrementAndGet();
+        if (wasLive) {
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Общее поколение меняется только вместе с живыми сайтами, поэтому запись теневого поколения
+     * не сбрасывает кэш поиска по всем сайтам.
+     */
+    private void nextGeneration(Integer siteId) {
+        siteGenerations.computeIfAbsent(siteId, k -> new AtomicLong()).incrementAndGet();
+        if (liveSites.contains(siteId)) {
+            generation.incrementAndGet();
+        }
+    }
+
+    private class PostingLoader implements RowCallbackHandler {
+        private int lemmaId = -1;
+        private int pageId;
+        private PostingList.Builder builder;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            int rowLemmaId = rs.getInt("lemma_id");
+            if (rowLemmaId != lemmaId) {
+                finish();
+                lemmaId = rowLemmaId;
+                pageId = 0;
+                builder = new PostingList.Builder();
+            }
+            int rowPageId = rs.getInt("page_id");
+            if (rowPageId != pageId) {
+                pageId = rowPageId;
+                builder.add(pageId, rs.getFloat("rank_index"));
+            }
+        }
+
+        private void finish() {
+            if (builder != null) {
+                postings.put(lemmaId, builder.build());
+            }
+        }
+    }
+}
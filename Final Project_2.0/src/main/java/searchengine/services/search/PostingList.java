@@ -0,0 +1,236 @@
+package searchengine.services.search;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Неизменяемый список страниц леммы: id страниц по возрастанию, закодированные
+ * разностями в формате varint, и ранги леммы на этих страницах.
+ * Каждые {@link #SKIP_INTERVAL} записей сохраняется указатель пропуска,
+ * чтобы при пересечении списков не декодировать их целиком.
+ */
+public final class PostingList {
+
+    public static final int SKIP_INTERVAL = 64;
+    public static final PostingList EMPTY = new PostingList(new byte[0], new float[0], 0, 0,
+            new int[0], new int[0], 0);
+
+    private final byte[] pageIds;
+    private final float[] ranks;
+    private final int size;
+    private final int lastPageId;
+    private final int[] skipBases;
+    private final int[] skipOffsets;
+    private final int skips;
+
+    private PostingList(byte[] pageIds, float[] ranks, int size, int lastPageId,
+                        int[] skipBases, int[] skipOffsets, int skips) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+        this.size = size;
+        this.lastPageId = lastPageId;
+        this.skipBases = skipBases;
+        this.skipOffsets = skipOffsets;
+        this.skips = skips;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Возвращает новый список с добавленными страницами. Массив pageIds должен быть
+     * отсортирован по возрастанию; ранг уже присутствующей страницы заменяется новым.
+     */
+    public PostingList merge(int[] addPageIds, float[] addRanks) {
+        if (addPageIds.length == 0) {
+            return this;
+        }
+        Builder builder = new Builder(size + addPageIds.length);
+        if (addPageIds[0] > lastPageId || size == 0) {
+            builder.appendEncoded(this);
+            for (int i = 0; i < addPageIds.length; i++) {
+                builder.add(addPageIds[i], addRanks[i]);
+            }
+            return builder.build();
+        }
+        Cursor cursor = cursor();
+        boolean hasOld = cursor.next();
+        int i = 0;
+        while (hasOld || i < addPageIds.length) {
+            if (i == addPageIds.length || (hasOld && cursor.pageId() < addPageIds[i])) {
+                builder.add(cursor.pageId(), cursor.rank());
+                hasOld = cursor.next();
+            } else {
+                if (hasOld && cursor.pageId() == addPageIds[i]) {
+                    hasOld = cursor.next();
+                }
+                builder.add(addPageIds[i], addRanks[i]);
+                i++;
+            }
+        }
+        return builder.build();
+    }
+
+    public PostingList remove(Set<Integer> removePageIds) {
+        Builder builder = new Builder(size);
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            if (!removePageIds.contains(cursor.pageId())) {
+                builder.add(cursor.pageId(), cursor.rank());
+            }
+        }
+        return builder.size == size ? this : builder.build();
+    }
+
+    public class Cursor {
+        private int position = -1;
+        private int offset;
+        private int pageId;
+
+        public boolean next() {
+            if (position + 1 >= size) {
+                return false;
+            }
+            position++;
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = pageIds[offset++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            pageId += delta;
+            return true;
+        }
+
+        /**
+         * Переходит к первой записи с id страницы не меньше target.
+         * Если текущая запись уже удовлетворяет условию, курсор не двигается.
+         * Блоки по {@link #SKIP_INTERVAL} записей перебираются галопом по указателям пропуска.
+         */
+        public boolean advance(int target) {
+            if (position >= 0 && pageId >= target) {
+                return true;
+            }
+            int block = (position + 1) / SKIP_INTERVAL;
+            int found = -1;
+            int bound = block;
+            int step = 1;
+            while (bound < skips && skipBases[bound] < target) {
+                found = bound;
+                bound += step;
+                step <<= 1;
+            }
+            if (found >= 0) {
+                int low = found + 1;
+                int high = Math.min(bound, skips) - 1;
+                while (low <= high) {
+                    int middle = (low + high) >>> 1;
+                    if (skipBases[middle] < target) {
+                        found = middle;
+                        low = middle + 1;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                position = (found + 1) * SKIP_INTERVAL - 1;
+                offset = skipOffsets[found];
+                pageId = skipBases[found];
+            }
+            while (next()) {
+                if (pageId >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int pageId() {
+            return pageId;
+        }
+
+        public float rank() {
+            return ranks[position];
+        }
+    }
+
+    public static class Builder {
+        private byte[] pageIds;
+        private float[] ranks;
+        private int length;
+        private int size;
+        private int lastPageId;
+        private int[] skipBases = new int[4];
+        private int[] skipOffsets = new int[4];
+        private int skips;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int expectedSize) {
+            pageIds = new byte[Math.max(expectedSize * 2, 16)];
+            ranks = new float[Math.max(expectedSize, 4)];
+        }
+
+        public void add(int pageId, float rank) {
+            if (size > 0 && pageId <= lastPageId) {
+                throw new IllegalArgumentException("Страницы должны добавляться по возрастанию id: "
+                        + pageId + " после " + lastPageId);
+            }
+            ensureCapacity(length + 5, size + 1);
+            if (size > 0 && size % SKIP_INTERVAL == 0) {
+                if (skips == skipBases.length) {
+                    skipBases = Arrays.copyOf(skipBases, skips * 2);
+                    skipOffsets = Arrays.copyOf(skipOffsets, skips * 2);
+                }
+                skipBases[skips] = lastPageId;
+                skipOffsets[skips] = length;
+                skips++;
+            }
+            int delta = pageId - lastPageId;
+            while ((delta & ~0x7F) != 0) {
+                pageIds[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            pageIds[length++] = (byte) delta;
+            ranks[size++] = rank;
+            lastPageId = pageId;
+        }
+
+        public PostingList build() {
+            return new PostingList(Arrays.copyOf(pageIds, length), Arrays.copyOf(ranks, size), size, lastPageId,
+                    Arrays.copyOf(skipBases, skips), Arrays.copyOf(skipOffsets, skips), skips);
+        }
+
+        private void appendEncoded(PostingList list) {
+            if (size != 0) {
+                throw new IllegalStateException("Готовый список можно добавить только в пустой Builder");
+            }
+            ensureCapacity(list.pageIds.length, list.size);
+            System.arraycopy(list.pageIds, 0, pageIds, 0, list.pageIds.length);
+            System.arraycopy(list.ranks, 0, ranks, 0, list.size);
+            length = list.pageIds.length;
+            size = list.size;
+            lastPageId = list.lastPageId;
+            skipBases = Arrays.copyOf(list.skipBases, Math.max(list.skips * 2, 4));
+            skipOffsets = Arrays.copyOf(list.skipOffsets, Math.max(list.skips * 2, 4));
+            skips = list.skips;
+        }
+
+        private void ensureCapacity(int bytes, int count) {
+            if (bytes > pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, Math.max(bytes, pageIds.length * 2));
+            }
+            if (count > ranks.length) {
+                ranks = Arrays.copyOf(ranks, Math.max(count, ranks.length * 2));
+            }
+        }
+    }
+}
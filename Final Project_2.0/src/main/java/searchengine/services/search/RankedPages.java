@@ -0,0 +1,9 @@
+package searchengine.services.search;
+
+import java.util.List;
+
+/**
+ * Лучшие страницы запроса по убыванию релевантности и общее число совпавших страниц.
+ */
+record RankedPages(List<ScoredPage> pages, int count) {
+}
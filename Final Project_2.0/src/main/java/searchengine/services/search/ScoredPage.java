@@ -0,0 +1,6 @@
+package searchengine.services.search;
+
+import java.util.List;
+
+record ScoredPage(Integer pageId, float relevance, List<Integer> lemmaIds) {
+}
@@ -0,0 +1,81 @@
+package searchengine.services.search;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.statistics.SearchCacheStatistics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU-кэш ранжированных результатов поиска. Запись действительна, пока не изменилось
+ * поколение индекса сайта (или всех сайтов), для которого она была посчитана, и не истёк TTL.
+ */
+@Component
+public class SearchCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<QueryKey, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SearchCache(SearchSettings searchSettings) {
+        this.maxSize = searchSettings.getCacheSize();
+        this.ttlMillis = searchSettings.getCacheTtlSeconds() * 1000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryKey, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    RankedPages get(QueryKey key, long generation, int topSize) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && (entry.generation != generation
+                    || System.currentTimeMillis() - entry.createdAt > ttlMillis)) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null || (entry.topSize < topSize && entry.pages.pages().size() == entry.topSize)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.pages;
+    }
+
+    void put(QueryKey key, long generation, int topSize, RankedPages pages) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(pages, generation, topSize, System.currentTimeMillis()));
+        }
+    }
+
+    public SearchCacheStatistics getStatistics() {
+        SearchCacheStatistics statistics = new SearchCacheStatistics();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        statistics.setHits(hitCount);
+        statistics.setMisses(missCount);
+        synchronized (entries) {
+            statistics.setSize(entries.size());
+        }
+        statistics.setHitRate(hitCount + missCount == 0 ? 0 : (double) hitCount / (hitCount + missCount));
+        return statistics;
+    }
+
+    record QueryKey(List<String> lemmas, Integer siteId) {
+    }
+
+    private record Entry(RankedPages pages, long generation, int topSize, long createdAt) {
+    }
+}
@@ -1,27 +1,17 @@
 package searchengine.services.search;
 
 import lombok.RequiredArgsConstructor;
-import org.apache.lucene.morphology.LuceneMorphology;
-import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
-import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import org.springframework.stereotype.Service;
 import searchengine.dto.search.SearchData;
 import searchengine.dto.search.SearchResponse;
-import searchengine.model.Lemma;
-import searchengine.model.Page;
-import searchengine.model.SearchIndex;
+import searchengine.model.PageText;
 import searchengine.model.Site;
-import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SearchIndexRepository;
 import searchengine.model.repositories.SiteRepository;
+import searchengine.services.morphology.Lemmatizer;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
@@ -30,9 +20,15 @@ public class SearchServiceImpl implements SearchService {
 
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
     private final SearchIndexRepository searchIndexRepository;
-    private Float maxRelAbs = 0.0f;
+    private final Lemmatizer lemmatizer;
+    private final InvertedIndex invertedIndex;
+    private final SearchCache searchCache;
+
+    private static final int DEFAULT_LIMIT = 20;
+    private static final Comparator<ScoredPage> RELEVANCE_ORDER = Comparator
+            .comparingDouble(ScoredPage::relevance)
+            .thenComparing(ScoredPage::pageId, Comparator.reverseOrder());
 
     @Override
     public SearchResponse search(String query, String pathSite, Integer offset, Integer limit) {
@@ -43,37 +39,47 @@ public class SearchServiceImpl implements SearchService {
         SearchResponse searchResponse = new SearchResponse();
         Integer searchSiteId = 0;
         if (pathSite != null) {
-            searchSiteId = siteRepository.findSitesByUrl(pathSite).get(0).getId();
+            List<Site> liveSites = siteRepository.findLiveSitesByUrl(pathSite);
+            if (liveSites.isEmpty()) {
+                return getFailResponse(searchResponse);
+            }
+            searchSiteId = liveSites.get(0).getId();
         }
         if (query.equals("")) {
             return getFailEmptyResponse(searchResponse);
         }
+        int from = offset == null || offset < 0 ? 0 : offset;
+        int size = limit == null || limit <= 0 ? DEFAULT_LIMIT : limit;
         String[] arrayString = getArrayWords(query);
         HashMap<String, Integer> mapWords = selectWords(arrayString, searchSiteId);
-        Map<Integer, List<SearchIndex>> indexList;
-        if (!mapWords.isEmpty()) {
-            indexList = findLemmaAndPageIds(mapWords, searchSiteId);
-        } else {
+        if (mapWords.isEmpty()) {
             return getFailResponse(searchResponse);
         }
-        List<SearchData> listResult = getResultList(indexList);
-        List<SearchData> listAfterFilter = new ArrayList<>();
-        int i = 1;
-        for (SearchData searchData : listResult) {
-            searchData.setRelevance(searchData.getRelevance() / maxRelAbs);
-            if (i > offset & i <= limit) {
-                listAfterFilter.add(searchData);
-            }
-            i++;
+        SearchCache.QueryKey queryKey = new SearchCache.QueryKey(
+                mapWords.keySet().stream().sorted().toList(), searchSiteId);
+        long generation = invertedIndex.getGeneration(searchSiteId);
+        RankedPages rankedPages = searchCache.get(queryKey, generation, from + size);
+        if (rankedPages == null) {
+            rankedPages = findTopPages(mapWords, searchSiteId, from + size);
+            searchCache.put(queryKey, generation, from + size, rankedPages);
         }
-        if (listAfterFilter.isEmpty()) {
+        if (rankedPages.count() == 0) {
+            return getFailResponse(searchResponse);
+        }
+        List<ScoredPage> topPages = rankedPages.pages();
+        if (from >= topPages.size()) {
             return getFailFilterResponse(searchResponse);
-        } else {
-            searchResponse.setData(listAfterFilter);
-            searchResponse.setResult(true);
-            searchResponse.setCount(listResult.size());
-            return searchResponse;
         }
+        float maxRelevance = topPages.get(0).relevance();
+        List<SearchData> listAfterFilter = new ArrayList<>();
+        for (ScoredPage scoredPage : topPages.subList(from, Math.min(from + size, topPages.size()))) {
+            pageRepository.findPageTextById(scoredPage.pageId())
+                    .ifPresent(page -> listAfterFilter.add(getSearchData(page, scoredPage, maxRelevance)));
+        }
+        searchResponse.setData(listAfterFilter);
+        searchResponse.setResult(true);
+        searchResponse.setCount(rankedPages.count());
+        return searchResponse;
     }
 
     private SearchResponse getFailResponse(SearchResponse failResponse) {
@@ -101,44 +107,23 @@ public class SearchServiceImpl implements SearchService {
     }
 
     private HashMap<String, Integer> selectWords(String[] words, Integer siteId) {
-        Double limitSearch = 0.95 * pageRepository.count();
+        Double limitSearch = 0.95 * pageRepository.countLivePages();
         HashMap<String, Integer> mapLemmas = new HashMap<>();
         for (String s : words) {
-            try {
-                LuceneMorphology luceneMorph;
-                if (s.matches("[а-я]+")) {
-                    luceneMorph = new RussianLuceneMorphology();
-                } else if (s.matches("[a-z]+")) {
-                    luceneMorph = new EnglishLuceneMorphology();
-                } else {
-                    continue;
-                }
-                String word = luceneMorph.getMorphInfo(s.trim()).get(0);
-                if (!(word.endsWith("МЕЖД") || word.endsWith("ПРЕДЛ")
-                        || word.endsWith("ЧАСТ") || word.endsWith("СОЮЗ"))) {
-                    word = word.substring(0, word.indexOf("|"));
-                } else {
-                    continue;
-                }
-                if (!mapLemmas.containsKey(word)) {
-                    List<Lemma> lemmaList;
-                    if (siteId > 0) {
-                        lemmaList = lemmaRepository.findLemmasByLemmaAndSiteId(word, siteId);
-                    } else {
-                        lemmaList = lemmaRepository.findLemmasByLemma(word);
-                    }
-                    if (lemmaList.size() == 0) {
-                        continue;
-                    }
-                    for (Lemma lemma : lemmaList) {
-                        Integer frequency = lemma.getFrequency();
-                        if (frequency < limitSearch) {
-                            mapLemmas.put(word, frequency);
-                        }
-                    }
-                }
-            } catch (Exception ex) {
-                ex.printStackTrace();
+            String word = lemmatizer.getLemma(s);
+            if (word == null || mapLemmas.containsKey(word)) {
+                continue;
+            }
+            List<Integer> lemmaIds = findLemmaIds(word, siteId);
+            if (lemmaIds.isEmpty()) {
+                continue;
+            }
+            int frequency = 0;
+            for (Integer lemmaId : lemmaIds) {
+                frequency += invertedIndex.getPostings(lemmaId).size();
+            }
+            if (frequency < limitSearch) {
+                mapLemmas.put(word, frequency);
             }
         }
         return mapLemmas.isEmpty() ? new HashMap<>() : mapLemmas.entrySet().stream().
@@ -146,106 +131,93 @@ public class SearchServiceImpl implements SearchService {
                         (Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new));
     }
 
-    private Map<Integer, List<SearchIndex>> findLemmaAndPageIds(HashMap<String, Integer> mapWords,
-                                                                Integer searchSiteId) {
-        Map<Integer, List<SearchIndex>> listMap = new HashMap<>();
-        List<SearchIndex> indexList = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : mapWords.entrySet()) {
-            Integer idLemma;
-            List<Lemma> listLemma;
-            if (searchSiteId > 0) {
-                listLemma = lemmaRepository.
-                        findLemmasByLemmaAndSiteId(entry.getKey(), searchSiteId);
-            } else {
-                listLemma = lemmaRepository.findLemmasByLemma(entry.getKey());
-            }
-            if (!listLemma.isEmpty()) {
-                for (Lemma lemma : listLemma) {
-                    idLemma = lemma.getId();
-                    indexList.addAll(searchIndexRepository.findIndexesByLemmaId(idLemma));
-                }
-            }
-        }
-        for (SearchIndex index : indexList) {
-            List<SearchIndex> searchIndexList = new ArrayList<>();
-            Integer pageId = index.getPageId();
-            if (listMap.containsKey(pageId)) {
-                searchIndexList = listMap.get(pageId);
-            }
-            searchIndexList.add(index);
-            listMap.put(pageId, searchIndexList);
+    private List<Integer> findLemmaIds(String lemma, Integer siteId) {
+        if (siteId > 0) {
+            Integer lemmaId = invertedIndex.getLemmaId(siteId, lemma);
+            return lemmaId == null ? Collections.emptyList() : Collections.singletonList(lemmaId);
         }
-        return listMap;
+        return invertedIndex.findLemmaIds(lemma);
     }
 
-    private List<SearchData> getResultList(Map<Integer, List<SearchIndex>> indexList) {
-        List<SearchData> listResult = new ArrayList<>();
-        for (Map.Entry<Integer, List<SearchIndex>> entry : indexList.entrySet()) {
-            Integer pageId = entry.getKey();
-            SearchData searchData = new SearchData();
-            Page page = pageRepository.findById(pageId).orElse(new Page());
-            Site site = siteRepository.findById(page.getSiteId()).orElse(new Site());
-            searchData.setUri(page.getPath());
-            searchData.setSite(site.getUrl().substring(0, site.getUrl().length() - 1));
-            searchData.setSiteName(site.getName());
-            String content = page.getContent();
-            Document document = Jsoup.parse(content);
-            String title = getTitle(content, document);
-            searchData.setTitle(title);
-            String text = getText(title, content, document);
-            StringBuilder snippetBuilder = new StringBuilder();
-            float relevanceAbs = 0.0f;
-            for (SearchIndex index : entry.getValue()) {
-                Integer lemmaId = index.getLemmaId();
-                relevanceAbs += index.getRank();
-                String listForms = lemmaRepository.findFormsLemmasById(lemmaId).get(0);
-                String snippet = findSnippet(text, listForms);
-                snippetBuilder.append(snippet);
+    /**
+     * Считает релевантность по данным индекса и оставляет в куче только topSize лучших страниц,
+     * поэтому загрузка страниц и построение сниппетов не зависят от общего числа совпадений.
+     * Первая страница результата несёт максимальную абсолютную релевантность запроса,
+     * по ней нормируются остальные.
+     */
+    private RankedPages findTopPages(HashMap<String, Integer> mapWords, Integer searchSiteId, int topSize) {
+        PriorityQueue<ScoredPage> heap = new PriorityQueue<>(RELEVANCE_ORDER);
+        int count = 0;
+        Collection<Integer> siteIds = searchSiteId > 0 ? Collections.singletonList(searchSiteId)
+                : invertedIndex.getSiteIds();
+        for (Integer siteId : siteIds) {
+            List<Integer> lemmaIds = new ArrayList<>();
+            List<PostingList> postings = new ArrayList<>();
+            for (String lemma : mapWords.keySet()) {
+                Integer lemmaId = invertedIndex.getLemmaId(siteId, lemma);
+                if (lemmaId == null) {
+                    break;
+                }
+                lemmaIds.add(lemmaId);
+                postings.add(invertedIndex.getPostings(lemmaId));
             }
-            if (relevanceAbs > maxRelAbs) {
-                maxRelAbs = relevanceAbs;
+            if (lemmaIds.size() < mapWords.size()) {
+                continue;
+            }
+            Intersection intersection = Intersection.of(postings);
+            for (int i = 0; i < intersection.size(); i++) {
+                float relevanceAbs = 0.0f;
+                for (int term = 0; term < lemmaIds.size(); term++) {
+                    relevanceAbs += intersection.rank(term, i);
+                }
+                count++;
+                if (heap.size() == topSize && relevanceAbs < heap.peek().relevance()) {
+                    continue;
+                }
+                ScoredPage scoredPage = new ScoredPage(intersection.pageId(i), relevanceAbs, lemmaIds);
+                if (heap.size() < topSize) {
+                    heap.add(scoredPage);
+                } else if (RELEVANCE_ORDER.compare(scoredPage, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(scoredPage);
+                }
             }
-            searchData.setSnippet(snippetBuilder.toString());
-            searchData.setRelevance(relevanceAbs);
-            listResult.add(searchData);
-        }
-        return listResult;
-    }
-
-    private String getTitle(String content, Document document) {
-        StringBuilder titleBuilder = new StringBuilder();
-        if (content.contains("</title>")) {
-            Elements elementsTitle = document.getElementsByTag("title");
-            elementsTitle.forEach(element -> titleBuilder.append(element.text()));
         }
-        return titleBuilder.toString();
+        List<ScoredPage> pages = new ArrayList<>(heap);
+        pages.sort(RELEVANCE_ORDER.reversed());
+        return new RankedPages(pages, count);
     }
 
-    private String getText(String title, String content, Document document) {
-        StringBuilder textBuilder = new StringBuilder();
-        textBuilder.append(title);
-        if (content.contains("</body>")) {
-            Elements elementsBody = document.getElementsByTag("body");
-            elementsBody.forEach(element -> textBuilder.append(element.text()));
-        }
-        return textBuilder.toString();
+    private SearchData getSearchData(PageText page, ScoredPage scoredPage, float maxRelevance) {
+        SearchData searchData = new SearchData();
+        Site site = siteRepository.findById(page.getSiteId()).orElse(new Site());
+        searchData.setUri(page.getPath());
+        searchData.setSite(site.getUrl().substring(0, site.getUrl().length() - 1));
+        searchData.setSiteName(site.getName());
+        searchData.setTitle(page.getTitle() == null ? "" : page.getTitle());
+        String text = page.getText() == null ? "" : page.getText();
+        searchData.setSnippet(SnippetBuilder.build(text, findOffsets(page.getId(), scoredPage.lemmaIds())));
+        searchData.setRelevance(scoredPage.relevance() / maxRelevance);
+        return searchData;
     }
 
-    private String findSnippet(String text, String stringWords) {
-        HashSet<String> listWords = new HashSet<>(Arrays.asList(stringWords.split(",")));
-        int around = 5;
-        StringBuilder stringBuilder = new StringBuilder();
-        for (String word3 : listWords) {
-            if (text.contains(word3)) {
-                String pattern = "([^ ]+ ?){0," + around + "}" + word3 + "[^a-zA-Zа-яА-ЯёЁ]"
-                        + "( ?[^ ]+){0," + around + "}";
-                Matcher m = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE).matcher(text);
-                while (m.find()) {
-                    stringBuilder.append(m.group()
-                            .replaceAll(word3, "<b>" + word3 + "</b>")).append("\n");
-                }
+    private int[] findOffsets(Integer pageId, List<Integer> lemmaIds) {
+        List<int[]> lemmaOffsets = new ArrayList<>();
+        int count = 0;
+        for (byte[] positions : searchIndexRepository.findPositionsByPageIdAndLemmaIds(pageId, lemmaIds)) {
+            if (positions != null) {
+                int[] offsets = TokenPositions.decode(positions);
+                lemmaOffsets.add(offsets);
+                count += offsets.length;
             }
         }
-        return stringBuilder.toString();
+        int[] offsets = new int[count];
+        int position = 0;
+        for (int[] lemma : lemmaOffsets) {
+            System.arraycopy(lemma, 0, offsets, position, lemma.length);
+            position += lemma.length;
+        }
+        Arrays.sort(offsets);
+        return offsets;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package searchengine.services.search;
+
+/**
+ * Строит сниппет по смещениям найденных слов: выбирает окно текста, в которое
+ * попадает больше всего совпадений, и выделяет слова по смещениям без регулярных выражений.
+ */
+public final class SnippetBuilder {
+
+    private static final int WINDOW = 240;
+    private static final String ELLIPSIS = "...";
+
+    private SnippetBuilder() {
+    }
+
+    /**
+     * @param offsets смещения начала найденных слов в тексте, по возрастанию
+     */
+    public static String build(String text, int[] offsets) {
+        if (offsets.length == 0) {
+            int to = alignEnd(text, Math.min(text.length(), WINDOW), 0);
+            return escape(text, 0, to) + (to < text.length() ? ELLIPSIS : "");
+        }
+        int bestStart = 0;
+        int bestEnd = 1;
+        int end = 0;
+        for (int start = 0; start < offsets.length; start++) {
+            end = Math.max(end, start + 1);
+            while (end < offsets.length && offsets[end] < offsets[start] + WINDOW) {
+                end++;
+            }
+            if (end - start > bestEnd - bestStart) {
+                bestStart = start;
+                bestEnd = end;
+            }
+        }
+        int windowStart = offsets[bestStart];
+        int windowEnd = wordEnd(text, offsets[bestEnd - 1]);
+        int padding = Math.max(0, (WINDOW - (windowEnd - windowStart)) / 2);
+        int from = alignStart(text, Math.max(0, windowStart - padding), windowStart);
+        int to = alignEnd(text, Math.min(text.length(), windowEnd + padding), windowEnd);
+
+        StringBuilder snippet = new StringBuilder();
+        if (from > 0) {
+            snippet.append(ELLIPSIS);
+        }
+        int position = from;
+        for (int i = bestStart; i < offsets.length && offsets[i] < to; i++) {
+            if (offsets[i] < position) {
+                continue;
+            }
+            int wordEnd = wordEnd(text, offsets[i]);
+            snippet.append(escape(text, position, offsets[i]))
+                    .append("<b>").append(escape(text, offsets[i], wordEnd)).append("</b>");
+            position = wordEnd;
+        }
+        snippet.append(escape(text, position, to));
+        if (to < text.length()) {
+            snippet.append(ELLIPSIS);
+        }
+        return snippet.toString();
+    }
+
+    private static int alignStart(String text, int from, int limit) {
+        while (from > 0 && from < limit && text.charAt(from - 1) != ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int alignEnd(String text, int to, int limit) {
+        while (to < text.length() && to > limit && text.charAt(to) != ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    private static int wordEnd(String text, int offset) {
+        int end = offset;
+        while (end < text.length() && isWordChar(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (c >= 'а' && c <= 'я') || (c >= 'А' && c <= 'Я') || c == 'ё' || c == 'Ё';
+    }
+
+    private static String escape(String text, int from, int to) {
+        StringBuilder escaped = new StringBuilder(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package searchengine.services.search;
+
+import java.util.Arrays;
+
+/**
+ * Смещения слов леммы в тексте страницы: разности возрастающих смещений в формате varint.
+ */
+public final class TokenPositions {
+
+    private TokenPositions() {
+    }
+
+    public static byte[] encode(int[] offsets, int count) {
+        byte[] data = new byte[count * 2 + 4];
+        int length = 0;
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int offset = offsets[i];
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int delta = offset - previous;
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            previous = offset;
+        }
+        return Arrays.copyOf(data, length);
+    }
+
+    public static int[] decode(byte[] data) {
+        int[] offsets = new int[data.length];
+        int count = 0;
+        int position = 0;
+        int previous = 0;
+        while (position < data.length) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += delta;
+            offsets[count++] = previous;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+}
@@ -2,17 +2,18 @@ package searchengine.services.statistics;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import searchengine.dto.statistics.DetailedStatisticsItem;
-import searchengine.dto.statistics.StatisticsData;
-import searchengine.dto.statistics.StatisticsResponse;
-import searchengine.dto.statistics.TotalStatistics;
+import searchengine.dto.statistics.*;
 import searchengine.model.Site;
+import searchengine.model.Status;
 import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SiteRepository;
+import searchengine.services.indexing.IndexingJob;
+import searchengine.services.indexing.IndexingJobs;
+import searchengine.services.indexing.SiteProgress;
+import searchengine.services.search.SearchCache;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
@@ -21,17 +22,20 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
+    private final SearchCache searchCache;
+    private final IndexingJobs indexingJobs;
 
     @Override
     public StatisticsResponse getStatistics() {
         TotalStatistics total = new TotalStatistics();
-        total.setSites(siteRepository.findAll().size());
-        total.setIndexing(true);
+        Collection<Site> sitesList = selectCurrentSites(siteRepository.findAll());
+        total.setSites(sitesList.size());
+        IndexingJob job = indexingJobs.getCurrent();
+        total.setIndexing(job != null && job.isRunning());
 
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
 
         if (total.getSites() > 0) {
-            List<Site> sitesList = siteRepository.findAll();
             for (Site site : sitesList) {
                 DetailedStatisticsItem item = getItem(site);
                 total.setPages(total.getPages() + item.getPages());
@@ -47,6 +51,10 @@ public class StatisticsServiceImpl implements StatisticsService {
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
         data.setDetailed(detailed);
+        data.setSearchCache(searchCache.getStatistics());
+        if (job != null) {
+            data.setIndexingJob(getJobStatistics(job));
+        }
 
         StatisticsResponse response = new StatisticsResponse();
         response.setStatistics(data);
@@ -54,6 +62,56 @@ public class StatisticsServiceImpl implements StatisticsService {
         return response;
     }
 
+    /**
+     * По каждому сайту показывается одно поколение: идущая переиндексация, а если её нет - живое.
+     */
+    private Collection<Site> selectCurrentSites(List<Site> sites) {
+        Map<String, Site> current = new LinkedHashMap<>();
+        for (Site site : sites) {
+            current.merge(site.getUrl(), site, (a, b) -> weight(b) > weight(a) ? b : a);
+        }
+        return current.values();
+    }
+
+    private static long weight(Site site) {
+        boolean current = site.getLive() || site.getStatus() == Status.INDEXING;
+        return (current ? 1L << 32 : 0) + site.getGeneration();
+    }
+
+    /**
+     * Счётчики текущего или последнего запуска индексации: по сайтам и суммарно.
+     */
+    private IndexingJobStatistics getJobStatistics(IndexingJob job) {
+        IndexingJobStatistics statistics = new IndexingJobStatistics();
+        statistics.setId(job.getId());
+        statistics.setRunning(job.isRunning());
+        statistics.setStopRequested(job.isStopRequested());
+        statistics.setStartTime(job.getStartTime());
+        List<SiteIndexingProgress> sites = new ArrayList<>();
+        for (SiteProgress progress : job.getSites()) {
+            SiteIndexingProgress item = new SiteIndexingProgress();
+            item.setUrl(progress.getUrl());
+            item.setName(progress.getName());
+            item.setState(progress.getState().name());
+            item.setStartTime(progress.getStartTime());
+            item.setFetched(progress.getFetched());
+            item.setQueued(progress.getQueued());
+            item.setFailed(progress.getFailed());
+            item.setIndexed(progress.getIndexed());
+            item.setBytes(progress.getBytes());
+            item.setPagesPerSecond(progress.getPagesPerSecond());
+            statistics.setFetched(statistics.getFetched() + item.getFetched());
+            statistics.setQueued(statistics.getQueued() + item.getQueued());
+            statistics.setFailed(statistics.getFailed() + item.getFailed());
+            statistics.setIndexed(statistics.getIndexed() + item.getIndexed());
+            statistics.setBytes(statistics.getBytes() + item.getBytes());
+            statistics.setPagesPerSecond(statistics.getPagesPerSecond() + item.getPagesPerSecond());
+            sites.add(item);
+        }
+        statistics.setSites(sites);
+        return statistics;
+    }
+
     private DetailedStatisticsItem getItem(Site site){
         DetailedStatisticsItem item = new DetailedStatisticsItem();
         item.setName(site.getName());
@@ -0,0 +1,89 @@
+package searchengine.services.indexing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrawlCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayRestoresPendingAndCompactsCompleted() throws IOException {
+        Path file = dir.resolve("site-1.log");
+        CrawlCheckpoint writer = new CrawlCheckpoint(file, 1000, 100);
+        writer.replay(new UrlFingerprintSet(100), entry -> {
+        });
+        writer.scheduled("https://example.com/a", 2.0, 0);
+        writer.scheduled("https://example.com/b", 0.5, 1700000000000L);
+        writer.completed("https://example.com/a");
+        writer.scheduled("https://example.com/c", 0.5, 0);
+        writer.completed("https://example.com/c");
+        writer.close();
+
+        UrlFingerprintSet visited = new UrlFingerprintSet(100);
+        List<CrawlCheckpoint.Entry> pending = new ArrayList<>();
+        CrawlCheckpoint reader = new CrawlCheckpoint(file, 1000, 100);
+        int restored = reader.replay(visited, pending::add);
+        reader.close();
+
+        assertEquals(3, restored);
+        assertTrue(visited.contains("https://example.com/a"));
+        assertTrue(visited.contains("https://example.com/b"));
+        assertTrue(visited.contains("https://example.com/c"));
+        assertEquals(List.of(new CrawlCheckpoint.Entry("https://example.com/b", 0.5, 1700000000000L)), pending);
+        assertEquals(List.of(
+                "=\thttps://example.com/a",
+                "+\t0.5\t1700000000000\thttps://example.com/b",
+                "=\thttps://example.com/c"), Files.readAllLines(file));
+    }
+
+    @Test
+    void compactsWhenAppendedRecordsReachLimit() throws IOException {
+        Path file = dir.resolve("site-2.log");
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, 4, 100);
+        checkpoint.replay(new UrlFingerprintSet(100), entry -> {
+        });
+        checkpoint.scheduled("https://example.com/a", 0.5, 0);
+        checkpoint.scheduled("https://example.com/b", 0.5, 0);
+        checkpoint.completed("https://example.com/a");
+        checkpoint.scheduled("https://example.com/b", 0.5, 0);
+
+        assertEquals(List.of(
+                "=\thttps://example.com/a",
+                "+\t0.5\t0\thttps://example.com/b"), Files.readAllLines(file));
+
+        checkpoint.completed("https://example.com/b");
+        checkpoint.close();
+
+        assertEquals(List.of(
+                "=\thttps://example.com/a",
+                "+\t0.5\t0\thttps://example.com/b",
+                "-\thttps://example.com/b"), Files.readAllLines(file));
+    }
+
+    @Test
+    void skipsMalformedLines() throws IOException {
+        Path file = dir.resolve("site-3.log");
+        Files.write(file, List.of(
+                "+\tnot-a-number\t0\thttps://example.com/broken",
+                "garbage",
+                "+\t1.0\t0\thttps://example.com/ok"));
+
+        List<CrawlCheckpoint.Entry> pending = new ArrayList<>();
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, 1000, 100);
+        checkpoint.replay(new UrlFingerprintSet(100), pending::add);
+        checkpoint.close();
+
+        assertEquals(List.of(new CrawlCheckpoint.Entry("https://example.com/ok", 1.0, 0)), pending);
+        assertEquals(List.of("+\t1.0\t0\thttps://example.com/ok"), Files.readAllLines(file));
+    }
+}
@@ -0,0 +1,81 @@
+package searchengine.services.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobotsRulesTest {
+
+    @Test
+    void longestMatchWinsOverShorterDisallow() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /shop
+                Allow: /shop/*.html$
+                """, "SearchEngineBot");
+
+        assertTrue(rules.isAllowed("https://example.com/shop/item.html"));
+        assertFalse(rules.isAllowed("https://example.com/shop/item.html?page=2"));
+        assertFalse(rules.isAllowed("https://example.com/shop/list"));
+        assertTrue(rules.isAllowed("https://example.com/about"));
+    }
+
+    @Test
+    void dollarAnchorsPatternToEndOfPath() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /*.pdf$
+                """, "SearchEngineBot");
+
+        assertFalse(rules.isAllowed("https://example.com/docs/manual.pdf"));
+        assertTrue(rules.isAllowed("https://example.com/docs/manual.pdf.html"));
+    }
+
+    @Test
+    void allowWinsOnEqualLength() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /a$
+                Allow: /a*
+                """, "SearchEngineBot");
+
+        assertTrue(rules.isAllowed("https://example.com/a"));
+    }
+
+    @Test
+    void ownGroupReplacesWildcardGroup() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /
+
+                User-agent: searchenginebot
+                Disallow: /private
+                Crawl-delay: 2
+                """, "SearchEngineBot");
+
+        assertTrue(rules.isAllowed("https://example.com/public"));
+        assertFalse(rules.isAllowed("https://example.com/private/page"));
+        assertEquals(2000, rules.getCrawlDelayMillis());
+    }
+
+    @Test
+    void emptyOwnGroupAllowsEverythingDespiteWildcardGroup() {
+        RobotsRules rules = RobotsRules.parse("""
+                User-agent: *
+                Disallow: /
+
+                User-agent: SearchEngineBot
+                Disallow:
+                """, "SearchEngineBot");
+
+        assertTrue(rules.isAllowed("https://example.com/"));
+        assertTrue(rules.isAllowed("https://example.com/any/page"));
+    }
+
+    @Test
+    void unreachableRobotsDisallowsEverything() {
+        assertFalse(RobotsRules.UNREACHABLE.isAllowed("https://example.com/"));
+        assertFalse(RobotsRules.UNREACHABLE.isAllowed("https://example.com/any/page"));
+        assertTrue(RobotsRules.EMPTY.isAllowed("https://example.com/any/page"));
+    }
+}
@@ -0,0 +1,48 @@
+package searchengine.services.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlCanonicalizerTest {
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer("https://example.com/");
+
+    @Test
+    void decodesUnreservedEscapesAndUppercasesTheRest() {
+        assertEquals("https://example.com/~user/a%2Fb%C3%A9",
+                canonicalizer.canonicalize("https://example.com/%7euser/a%2fb%c3%a9"));
+        assertEquals("https://example.com/a-b_c.d",
+                canonicalizer.canonicalize("https://example.com/a%2Db%5Fc%2Ed"));
+    }
+
+    @Test
+    void encodesIllegalCharactersOnce() {
+        assertEquals("https://example.com/%D0%BF%D0%BE%D0%B8%D1%81%D0%BA%20x",
+                canonicalizer.canonicalize("https://example.com/поиск x"));
+        assertEquals(canonicalizer.canonicalize("https://example.com/поиск"),
+                canonicalizer.canonicalize("https://example.com/%d0%bf%d0%be%d0%b8%d1%81%d0%ba"));
+    }
+
+    @Test
+    void removesDotSegments() {
+        assertEquals("https://example.com/a/c", canonicalizer.canonicalize("https://example.com/a/./b/../c"));
+        assertEquals("https://example.com/a/", canonicalizer.canonicalize("https://example.com/a/b/.."));
+    }
+
+    @Test
+    void normalizesHostSchemeQueryAndFragment() {
+        assertEquals("https://example.com/a?a=1&b=2",
+                canonicalizer.canonicalize("http://WWW.Example.com:80/a?utm_source=x&b=2&a=1#top"));
+        assertEquals("https://example.com/docs/", canonicalizer.canonicalize("https://example.com/docs/index.html"));
+        assertEquals("https://example.com/section/", canonicalizer.canonicalize("https://example.com/section/"));
+        assertEquals("https://example.com/section", canonicalizer.canonicalize("https://example.com/section"));
+        assertEquals("https://example.com/", canonicalizer.canonicalize("https://example.com"));
+    }
+
+    @Test
+    void rejectsNonHtmlAndForeignSchemes() {
+        assertNull(canonicalizer.canonicalize("https://example.com/file.pdf"));
+        assertNull(canonicalizer.canonicalize("mailto:info@example.com"));
+        assertNull(canonicalizer.canonicalize("  "));
+    }
+}
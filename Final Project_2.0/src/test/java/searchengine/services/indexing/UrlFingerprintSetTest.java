@@ -0,0 +1,60 @@
+package searchengine.services.indexing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlFingerprintSetTest {
+
+    @Test
+    void addReturnsTrueOnlyForFirstOccurrence() {
+        UrlFingerprintSet set = new UrlFingerprintSet(100);
+
+        assertTrue(set.add("https://example.com/a"));
+        assertFalse(set.add("https://example.com/a"));
+        assertTrue(set.contains("https://example.com/a"));
+        assertFalse(set.contains("https://example.com/b"));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void growsPastInitialTableWhileBelowCap() {
+        UrlFingerprintSet set = new UrlFingerprintSet(10_000);
+
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(set.add("https://example.com/page" + i), "page" + i);
+        }
+
+        assertEquals(5000, set.size());
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(set.contains("https://example.com/page" + i), "page" + i);
+        }
+        assertFalse(set.contains("https://example.com/page5000"));
+    }
+
+    @Test
+    void enforcesCapExactly() {
+        UrlFingerprintSet set = new UrlFingerprintSet(5000);
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(set.add("https://example.com/page" + i), "page" + i);
+        }
+        assertFalse(set.isFull());
+
+        assertFalse(set.add("https://example.com/extra"));
+        assertFalse(set.contains("https://example.com/extra"));
+        assertTrue(set.isFull());
+        assertEquals(5000, set.size());
+    }
+
+    @Test
+    void duplicateAtCapIsNotReportedAsFull() {
+        UrlFingerprintSet set = new UrlFingerprintSet(3);
+        set.add("https://example.com/a");
+        set.add("https://example.com/b");
+        set.add("https://example.com/c");
+
+        assertFalse(set.add("https://example.com/a"));
+        assertFalse(set.isFull());
+        assertTrue(set.contains("https://example.com/c"));
+    }
+}